@@ -0,0 +1,77 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Represents a compiled list of words to hide, each of which is replaced with '*redacted*' in message bodies.
+ * Compiling once up front lets the same list be applied to every message, from any number of threads.
+ */
+public final class Blacklist {
+    public static final String REDACTED = "*redacted*";
+
+    private final String[] lowerCaseWords;
+    private final Pattern[] patterns;
+    private final String key;
+
+    /**
+     * Compiles the given {@code words}.
+     *
+     * @param words The words to hide.
+     */
+    public Blacklist(String[] words) {
+        lowerCaseWords = new String[words.length];
+        patterns = new Pattern[words.length];
+        for (int i = 0; i < words.length; i++) {
+            lowerCaseWords[i] = words[i].toLowerCase();
+            patterns[i] = Pattern.compile(words[i]);
+        }
+        key = "blacklist" + Arrays.toString(words);
+    }
+
+    /**
+     * @return A string identifying these words, for keying a {@link RedactionCache}.
+     */
+    public String key() {
+        return key;
+    }
+
+    /**
+     * Replaces every blacklisted word in the given {@code message}.
+     *
+     * @param message The message content.
+     * @param metrics The metrics the number of redactions is added to.
+     * @return The message content with the blacklisted words redacted.
+     */
+    public String redact(String message, ExportMetrics metrics) {
+        return redact(message, metrics.redactions);
+    }
+
+    /**
+     * Replaces every blacklisted word in the given {@code message}.
+     *
+     * @param message    The message content.
+     * @param redactions The counter the number of redactions is added to.
+     * @return The message content with the blacklisted words redacted.
+     */
+    public String redact(String message, AtomicLong redactions) {
+        String lowerCaseMessage = message.toLowerCase();
+        for (int i = 0; i < patterns.length; i++) {
+            if (lowerCaseMessage.contains(lowerCaseWords[i])) {
+                Matcher matcher = patterns[i].matcher(message);
+                int found = 0;
+                while (matcher.find()) {
+                    found++;
+                }
+                if (found > 0) {
+                    message = matcher.replaceAll(REDACTED);
+                    lowerCaseMessage = message.toLowerCase();
+                    redactions.addAndGet(found);
+                }
+            }
+        }
+        return message;
+    }
+}
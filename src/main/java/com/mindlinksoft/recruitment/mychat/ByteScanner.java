@@ -0,0 +1,154 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Helpers for finding line ends and separators in the bytes of a conversation eight bytes at a time.
+ * <p>
+ * Each step loads eight bytes as one little-endian {@code long} and tests all of them at once with carry-free
+ * arithmetic (SWAR, SIMD within a register), so the lowest flagged byte is always the first match. The last few
+ * bytes of a range are tested one at a time. A byte-at-a-time scanner is used instead when the
+ * {@value #SCANNER_PROPERTY} system property is {@code scalar}, or when the long view of byte arrays is unavailable.
+ */
+public final class ByteScanner {
+    public static final String SCANNER_PROPERTY = "mychat.scanner";
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final VarHandle LONGS = longView();
+
+    /**
+     * Whether the eight-bytes-at-a-time scanner was selected when the class was loaded.
+     */
+    public static final boolean SWAR = LONGS != null && !"scalar".equals(System.getProperty(SCANNER_PROPERTY));
+
+    private ByteScanner() {
+    }
+
+    /**
+     * Finds the first occurrence of {@code value} in {@code bytes[from, to)}.
+     *
+     * @param bytes The bytes to search.
+     * @param from  The first index searched.
+     * @param to    The index after the last one searched.
+     * @param value The byte to find.
+     * @return The index of the byte, or -1 when it does not occur.
+     */
+    public static int indexOf(byte[] bytes, int from, int to, byte value) {
+        return SWAR ? indexOfEither(bytes, from, to, value, value) : scalarIndexOfEither(bytes, from, to, value, value);
+    }
+
+    /**
+     * Finds the first {@code '\n'} or {@code '\r'} in {@code bytes[from, to)}.
+     *
+     * @param bytes The bytes to search.
+     * @param from  The first index searched.
+     * @param to    The index after the last one searched.
+     * @return The index of the line end, or -1 when there is none.
+     */
+    public static int indexOfLineEnd(byte[] bytes, int from, int to) {
+        return SWAR ? indexOfEither(bytes, from, to, (byte) '\n', (byte) '\r')
+                : scalarIndexOfEither(bytes, from, to, (byte) '\n', (byte) '\r');
+    }
+
+    /**
+     * Finds the last {@code '\n'} or {@code '\r'} in {@code bytes[from, to)}, for reading a file from its end.
+     *
+     * @param bytes The bytes to search.
+     * @param from  The first index searched.
+     * @param to    The index after the last one searched.
+     * @return The index of the line end, or -1 when there is none.
+     */
+    public static int lastIndexOfLineEnd(byte[] bytes, int from, int to) {
+        if (!SWAR) {
+            return scalarLastIndexOfEither(bytes, from, to, (byte) '\n', (byte) '\r');
+        }
+        long newlines = ONES * '\n';
+        long returns = ONES * '\r';
+        int i = to - Long.BYTES;
+        for (; i >= from; i -= Long.BYTES) {
+            long word = (long) LONGS.get(bytes, i);
+            long matches = exactZeroBits(word ^ newlines) | exactZeroBits(word ^ returns);
+            if (matches != 0) {
+                return i + Long.BYTES - 1 - (Long.numberOfLeadingZeros(matches) >>> 3);
+            }
+        }
+        return scalarLastIndexOfEither(bytes, from, i + Long.BYTES, (byte) '\n', (byte) '\r');
+    }
+
+    /**
+     * Finds the first ASCII digit in {@code text}, checking one character at a time; a string's characters cannot
+     * be loaded as longs.
+     *
+     * @param text The text to search.
+     * @return The index of the digit, or -1 when there is none.
+     */
+    public static int indexOfDigit(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOfEither(byte[] bytes, int from, int to, byte first, byte second) {
+        long firstPattern = ONES * (first & 0xFF);
+        long secondPattern = ONES * (second & 0xFF);
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) LONGS.get(bytes, i);
+            long matches = zeroBits(word ^ firstPattern) | zeroBits(word ^ secondPattern);
+            if (matches != 0) {
+                return i + (Long.numberOfTrailingZeros(matches) >>> 3);
+            }
+        }
+        return scalarIndexOfEither(bytes, i, to, first, second);
+    }
+
+    /**
+     * Sets the high bit of every zero byte of {@code word}, and possibly of bytes above a zero byte, so the lowest
+     * set bit always marks the first zero byte.
+     */
+    private static long zeroBits(long word) {
+        return (word - ONES) & ~word & HIGH_BITS;
+    }
+
+    /**
+     * Sets the high bit of exactly the zero bytes of {@code word}, so the highest set bit marks the last zero byte.
+     * The additions are made on the low seven bits of each byte, so they never carry into the next byte.
+     */
+    private static long exactZeroBits(long word) {
+        return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+    }
+
+    static int scalarIndexOfEither(byte[] bytes, int from, int to, byte first, byte second) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == first || bytes[i] == second) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int scalarLastIndexOfEither(byte[] bytes, int from, int to, byte first, byte second) {
+        for (int i = to - 1; i >= from; i--) {
+            if (bytes[i] == first || bytes[i] == second) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static VarHandle longView() {
+        try {
+            return MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the {@code <unix_timestamp> <username> <message>} lines of a conversation text file from their raw bytes.
+ * <p>
+ * The two separators are found with a {@link ByteScanner}, and only the username and message text are decoded, in
+ * the platform charset. A line that is not plainly {@code <digits> <letters> <text>}, such as one with a Unicode line
+ * separator in its text, is checked against the line pattern instead, so both give the same messages.
+ */
+final class ChatLineParser {
+    static final Charset CHARSET = Charset.defaultCharset();
+    private static final Pattern LINE_PATTERN = Pattern.compile("^(\\d+) ([A-Za-z]+) (.+)$");
+
+    private final Matcher matcher = LINE_PATTERN.matcher("");
+
+    /**
+     * Parses the line {@code bytes[start, end)}, which does not include its line end.
+     *
+     * @return The message, or {@code null} when the line is not a message line.
+     */
+    Message parse(byte[] bytes, int start, int end) {
+        int firstSpace = ByteScanner.indexOf(bytes, start, end, (byte) ' ');
+        int secondSpace = firstSpace < 0 ? -1 : ByteScanner.indexOf(bytes, firstSpace + 1, end, (byte) ' ');
+        if (secondSpace < 0 || secondSpace + 1 == end || !isDigits(bytes, start, firstSpace)
+                || !isLetters(bytes, firstSpace + 1, secondSpace)) {
+            return parse(new String(bytes, start, end - start, CHARSET));
+        }
+        String text = new String(bytes, secondSpace + 1, end - secondSpace - 1, CHARSET);
+        if (hasLineSeparator(text)) {
+            return parse(new String(bytes, start, end - start, CHARSET));
+        }
+        String username = new String(bytes, firstSpace + 1, secondSpace - firstSpace - 1, StandardCharsets.ISO_8859_1);
+        return new Message(Instant.ofEpochSecond(parseTimestamp(bytes, start, firstSpace)), username, text);
+    }
+
+    /**
+     * Parses the given {@code line} with the line pattern.
+     */
+    private Message parse(String line) {
+        if (!matcher.reset(line).find()) {
+            return null;
+        }
+        return new Message(Instant.ofEpochSecond(Long.parseUnsignedLong(matcher.group(1))), matcher.group(2), matcher.group(3));
+    }
+
+    private static boolean isDigits(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                return false;
+            }
+        }
+        return from < to;
+    }
+
+    private static boolean isLetters(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if ((b < 'a' || b > 'z') && (b < 'A' || b > 'Z')) {
+                return false;
+            }
+        }
+        return from < to;
+    }
+
+    /**
+     * Parses the digits {@code bytes[from, to)} as an unsigned number, as {@link Long#parseUnsignedLong} would.
+     */
+    private static long parseTimestamp(byte[] bytes, int from, int to) {
+        if (to - from > 18) {
+            return Long.parseUnsignedLong(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+        }
+        long timestamp = 0;
+        for (int i = from; i < to; i++) {
+            timestamp = timestamp * 10 + (bytes[i] - '0');
+        }
+        return timestamp;
+    }
+
+    /**
+     * Whether the {@code text} has a character the line pattern treats as a line end, which only the pattern
+     * handles exactly.
+     */
+    private static boolean hasLineSeparator(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
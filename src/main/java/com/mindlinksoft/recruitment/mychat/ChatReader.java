@@ -0,0 +1,144 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Represents a reader that streams the messages of a conversation text file one at a time, so a whole
+ * conversation never has to be held in memory. Lines are split on the raw bytes with a {@link ByteScanner} and
+ * parsed by a {@link ChatLineParser}.
+ */
+public class ChatReader implements MessageSource {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The name of the conversation, read from the first line of the file.
+     */
+    public final String conversationName;
+
+    /**
+     * The number of lines read so far, including the conversation name.
+     */
+    public long linesRead;
+
+    private final InputStream inputStream;
+    private final ChatLineParser parser = new ChatLineParser();
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private int lineStart;
+    private int lineEnd;
+
+    /**
+     * Opens the conversation at the given {@code inputFilePath} and reads its name.
+     *
+     * @param inputFilePath The conversation text file.
+     * @throws IOException Thrown when the file cannot be opened or read.
+     */
+    public ChatReader(String inputFilePath) throws IOException {
+        this(new FileInputStream(inputFilePath));
+    }
+
+    /**
+     * Reads the conversation name from the given {@code inputStream}, leaving its messages to be streamed.
+     *
+     * @param inputStream The conversation text; it is closed with this reader.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public ChatReader(InputStream inputStream) throws IOException {
+        this.inputStream = inputStream;
+        conversationName = nextLine() ? new String(buffer, lineStart, lineEnd - lineStart, ChatLineParser.CHARSET) : null;
+        linesRead = 1;
+    }
+
+    @Override
+    public String conversationName() {
+        return conversationName;
+    }
+
+    @Override
+    public long linesRead() {
+        return linesRead;
+    }
+
+    /**
+     * Reads the next message.
+     *
+     * @return The next message, or {@code null} at the end of the file.
+     * @throws IOException Thrown when the file cannot be read.
+     */
+    @Override
+    public Message next() throws IOException {
+        if (!nextLine()) {
+            return null;
+        }
+        linesRead++;
+        Message message = parser.parse(buffer, lineStart, lineEnd);
+        if (message == null) {
+            throw new IllegalArgumentException("Line " + linesRead + " is not a '<unix_timestamp> <username> <message>' line.");
+        }
+        return message;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    /**
+     * Finds the next line, ended by '\n', '\r' or "\r\n" as for {@link java.io.BufferedReader#readLine()}, and
+     * sets {@code lineStart} and {@code lineEnd} to its bytes in the buffer.
+     *
+     * @return {@code false} at the end of the input.
+     */
+    private boolean nextLine() throws IOException {
+        int searched = position;
+        int end;
+        while ((end = ByteScanner.indexOfLineEnd(buffer, searched, limit)) < 0) {
+            if (endOfInput) {
+                if (position == limit) {
+                    return false;
+                }
+                lineStart = position;
+                lineEnd = limit;
+                position = limit;
+                return true;
+            }
+            searched = limit - position;
+            fill();
+            searched += position;
+        }
+        if (buffer[end] == '\r' && end + 1 == limit && !endOfInput) {
+            int offset = end - position;
+            fill();
+            end = position + offset;
+        }
+        lineStart = position;
+        lineEnd = end;
+        position = buffer[end] == '\r' && end + 1 < limit && buffer[end + 1] == '\n' ? end + 2 : end + 1;
+        return true;
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer, growing it when they fill it, and reads more after them.
+     */
+    private void fill() throws IOException {
+        int unread = limit - position;
+        if (unread == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        } else if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, unread);
+        }
+        position = 0;
+        limit = unread;
+        int read = inputStream.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            limit += read;
+        }
+    }
+}
@@ -1,9 +1,30 @@
 package com.mindlinksoft.recruitment.mychat;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * Represents a helper to parse command line arguments.
  */
 public final class CommandLineArgumentParser {
+    private final ConversationExporter exporter;
+
+    /**
+     * Initializes a parser whose filters run against a new {@link ConversationExporter}.
+     */
+    public CommandLineArgumentParser() {
+        this(new ConversationExporter());
+    }
+
+    /**
+     * Initializes a parser whose filters run against the given {@code exporter}, so its metrics and options are shared.
+     *
+     * @param exporter The exporter used to read and write the conversation.
+     */
+    public CommandLineArgumentParser(ConversationExporter exporter) {
+        this.exporter = exporter;
+    }
+
     /**
      * Parses the given {@code userReply} into the appropriate methods of filtering.
      *
@@ -15,21 +36,25 @@ public final class CommandLineArgumentParser {
     public void parseCommandLineArguments(String filterType, String[] stringToFilterBy, Boolean hideCardAndPhoneNumbers, Boolean obfuscateUserIds) throws Exception {
         switch (filterType) {
             case ("username"):
-                Filter userSearch = new Filter(Filter.FilterMethod.USERNAME);
+                Filter userSearch = new Filter(Filter.FilterMethod.USERNAME, exporter);
                 userSearch.searchUserMessages(stringToFilterBy[0], hideCardAndPhoneNumbers, obfuscateUserIds);
                 break;
             case ("specific_word"):
-                Filter specWord = new Filter(Filter.FilterMethod.SPECIFIC_WORD);
+                Filter specWord = new Filter(Filter.FilterMethod.SPECIFIC_WORD, exporter);
                 specWord.searchSpecificWord(stringToFilterBy[0], hideCardAndPhoneNumbers, obfuscateUserIds);
                 break;
             case ("hide_word"):
-                Filter hideWord = new Filter(Filter.FilterMethod.REMOVE_WORDS);
+                Filter hideWord = new Filter(Filter.FilterMethod.REMOVE_WORDS, exporter);
                 hideWord.hideSpecificWord(stringToFilterBy, hideCardAndPhoneNumbers, obfuscateUserIds);
                 break;
             case ("no_filter"):
-                Filter noFilter = new Filter(Filter.FilterMethod.NO_FILTER);
+                Filter noFilter = new Filter(Filter.FilterMethod.NO_FILTER, exporter);
                 noFilter.noFilter(hideCardAndPhoneNumbers, obfuscateUserIds);
                 break;
+            case ("partition"):
+                Filter partition = new Filter(Filter.FilterMethod.PARTITION, exporter);
+                partition.partition(stringToFilterBy[0], hideCardAndPhoneNumbers, obfuscateUserIds);
+                break;
             default:
                 System.out.println("The keyword you entered was not recognised, please try again.");
 
@@ -38,4 +63,229 @@ public final class CommandLineArgumentParser {
 
     }
 
+    /**
+     * Parses the optional {@code name=value} arguments that follow the required ones.
+     *
+     * @param args  The command line arguments.
+     * @param start The index of the first optional argument.
+     * @return The options, with defaults for anything not given.
+     */
+    public ExportOptions parseOptions(String[] args, int start) {
+        ExportOptions options = new ExportOptions();
+        for (int i = start; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Optional arguments must be given as name=value, but found '" + args[i] + "'.");
+            }
+            String name = args[i].substring(0, separator);
+            String value = args[i].substring(separator + 1);
+            switch (name) {
+                case ExportOptions.METRICS_FILE:
+                    options.metricsFilePath = value;
+                    break;
+                case ExportOptions.SNAPSHOT:
+                    options.useSnapshot = parseYesOrNo(name, value);
+                    break;
+                case ExportOptions.PARTITION_DIR:
+                    options.partitionDirectory = value;
+                    break;
+                case ExportOptions.MAX_OPEN_FILES:
+                    options.maxOpenFiles = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.PARALLELISM:
+                    options.parallelism = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.REDACTION_BATCH_SIZE:
+                    options.redactionBatchSize = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.MERGE:
+                    options.mergeInputFilePaths = Arrays.asList(value.split(","));
+                    break;
+                case ExportOptions.ACTIVITY_WINDOW:
+                    options.activityWindow = parseEnum(WindowedActivityReport.Window.class, name, value);
+                    break;
+                case ExportOptions.WINDOW_HISTORY:
+                    options.windowHistory = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.PIPELINE:
+                    options.pipeline = parseYesOrNo(name, value);
+                    break;
+                case ExportOptions.PIPELINE_BATCH_SIZE:
+                    options.pipelineBatchSize = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.PIPELINE_BUFFER:
+                    options.pipelineBufferSize = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.PSEUDONYM_STORE:
+                    options.pseudonymStorePath = value;
+                    break;
+                case ExportOptions.PSEUDONYM_CAPACITY:
+                    options.pseudonymCapacity = parsePositiveInt(name, value);
+                    if (Integer.bitCount(options.pseudonymCapacity) != 1 || options.pseudonymCapacity > PseudonymStore.MAX_CAPACITY) {
+                        throw new IllegalArgumentException("The option '" + name + "' must be a power of two no larger than " + PseudonymStore.MAX_CAPACITY + ", but was '" + value + "'.");
+                    }
+                    break;
+                case ExportOptions.DEDUPLICATE:
+                    options.deduplicate = parseYesOrNo(name, value);
+                    break;
+                case ExportOptions.DEDUP_WINDOW:
+                    options.dedupWindowSeconds = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.DEDUP_CAPACITY:
+                    options.dedupCapacity = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.SAMPLE:
+                    options.sampleSize = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.SAMPLE_SEED:
+                    options.sampleSeed = parseLong(name, value);
+                    break;
+                case ExportOptions.STATS:
+                    options.statistics = parseYesOrNo(name, value);
+                    break;
+                case ExportOptions.TRACKED_USERS:
+                    options.trackedUsers = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.SORT:
+                    options.sortOrder = parseEnum(SortOrder.class, name, value);
+                    break;
+                case ExportOptions.SORT_BUFFER:
+                    options.sortBufferSize = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.FORMAT:
+                    options.outputFormat = parseEnum(OutputFormat.class, name, value);
+                    break;
+                case ExportOptions.SERIALIZATION_THREADS:
+                    options.serializationThreads = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.SERIALIZATION_CHUNK_SIZE:
+                    options.serializationChunkSize = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.TRENDING_TERMS:
+                    options.trendingTerms = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.STOP_WORDS:
+                    try {
+                        options.stopWords = TrendingTermsReport.readStopWords(value);
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException("The stop-word list '" + value + "' could not be read.");
+                    }
+                    break;
+                case ExportOptions.JSON_INPUT:
+                    options.jsonInputFilePath = value;
+                    break;
+                case ExportOptions.REDACTION_CACHE:
+                    options.redactionCacheSize = parsePositiveInt(name, value);
+                    if (options.redactionCacheSize < RedactionCache.MIN_CAPACITY) {
+                        throw new IllegalArgumentException("The option '" + name + "' must be at least " + RedactionCache.MIN_CAPACITY + ", but was '" + value + "'.");
+                    }
+                    break;
+                case ExportOptions.OFFSET:
+                    options.offset = parseNonNegativeInt(name, value);
+                    break;
+                case ExportOptions.LIMIT:
+                    options.limit = parsePositiveInt(name, value);
+                    break;
+                case ExportOptions.NEWEST:
+                    options.newest = parsePositiveInt(name, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("The option '" + name + "' was not recognised.");
+            }
+        }
+        if (options.newest > 0 && (options.limit > 0 || options.mergeInputFilePaths != null
+                || options.jsonInputFilePath != null || options.sortOrder != null || options.deduplicate)) {
+            throw new IllegalArgumentException("The option 'newest' reads the input file from its end, so it cannot be used with 'limit', 'merge', 'json_input', 'sort' or 'dedup'.");
+        }
+        if (start > 0 && "partition".equals(args[0]) && (options.deduplicate || options.sortOrder != null
+                || options.limit > 0 || options.offset > 0 || options.sampleSize > 0 || options.newest > 0)) {
+            throw new IllegalArgumentException("A partitioned export writes every message of the input in order, so it cannot be used with 'dedup', 'sort', 'limit', 'offset', 'sample' or 'newest'.");
+        }
+        return options;
+    }
+
+    /**
+     * Parses the positive whole number {@code value} of the option {@code name}.
+     *
+     * @param name  The option name.
+     * @param value The option value.
+     * @return The number.
+     */
+    private int parsePositiveInt(String name, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("The option '" + name + "' must be a positive whole number, but was '" + value + "'.");
+    }
+
+    /**
+     * Parses the whole number {@code value} of the option {@code name}, which may be zero but not negative.
+     *
+     * @param name  The option name.
+     * @param value The option value.
+     * @return The number.
+     */
+    private int parseNonNegativeInt(String name, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("The option '" + name + "' must be zero or a positive whole number, but was '" + value + "'.");
+    }
+
+    /**
+     * Parses the whole number {@code value} of the option {@code name}.
+     *
+     * @param name  The option name.
+     * @param value The option value.
+     * @return The number.
+     */
+    private long parseLong(String name, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The option '" + name + "' must be a whole number, but was '" + value + "'.");
+        }
+    }
+
+    /**
+     * Parses the {@code value} of the option {@code name} as one of the constants of {@code type}, ignoring case.
+     *
+     * @param type  The enum type.
+     * @param name  The option name.
+     * @param value The option value.
+     * @return The constant.
+     */
+    private <E extends Enum<E>> E parseEnum(Class<E> type, String name, String value) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value)) {
+                return constant;
+            }
+        }
+        throw new IllegalArgumentException("The option '" + name + "' must be one of " + Arrays.toString(type.getEnumConstants()).toLowerCase() + ", but was '" + value + "'.");
+    }
+
+    /**
+     * Parses the 'yes' or 'no' {@code value} of the option {@code name}.
+     *
+     * @param name  The option name.
+     * @param value The option value.
+     * @return Whether the value was 'yes'.
+     */
+    private boolean parseYesOrNo(String name, String value) {
+        if (!value.equals("yes") && !value.equals("no")) {
+            throw new IllegalArgumentException("The option '" + name + "' must be 'yes' or 'no', but was '" + value + "'.");
+        }
+        return value.equals("yes");
+    }
+
 }
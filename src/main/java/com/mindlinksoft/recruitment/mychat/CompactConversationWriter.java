@@ -0,0 +1,116 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import com.google.gson.JsonIOException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents a writer of the compact JSON schema, in which each user is written once and referenced by index:
+ * <pre>
+ * {"conversation_name":"My Conversation",
+ *  "base_timestamp":1448470901,
+ *  "messages":[[0,0,"Hello there!"],[4,1,"how are you?"],...],
+ *  "users":["bob","mike",...],
+ *  "user_activity_report":[[0,4],[1,2],...],
+ *  "activity_windows":{"window":"hour","recent_windows":[{"window_start":1448470800,"message_count":9,"top_users":[[0,4],...]}],...}}
+ * </pre>
+ * Each message is an array of its timestamp in seconds after {@code base_timestamp}, the timestamp of the first
+ * message, the index of its sender in {@code users}, and its text. Users are indexed in the order they first send a
+ * message. The activity report lists the index and message count of each user, most active first, and the
+ * top users of each activity window are listed the same way. The base timestamp is left out when there are no
+ * messages.
+ */
+public class CompactConversationWriter extends StreamingConversationWriter {
+    private final Map<String, Integer> userIndexes = new LinkedHashMap<>();
+    private long baseTimestamp;
+    private boolean started;
+
+    /**
+     * Starts the document on the given {@code outputStream}.
+     *
+     * @param outputStream     The stream the document is written to; it is closed with this writer.
+     * @param conversationName The name of the conversation.
+     * @throws IOException Thrown when the output cannot be written.
+     */
+    public CompactConversationWriter(OutputStream outputStream, String conversationName) throws IOException {
+        super(outputStream);
+        jsonWriter.name("conversation_name").value(conversationName);
+    }
+
+    @Override
+    public void write(Message message) {
+        try {
+            long timestamp = message.unix_timestamp.getEpochSecond();
+            if (!started) {
+                baseTimestamp = timestamp;
+                jsonWriter.name("base_timestamp").value(baseTimestamp);
+                jsonWriter.name("messages").beginArray();
+                started = true;
+            }
+            Integer index = userIndexes.get(message.username);
+            if (index == null) {
+                index = userIndexes.size();
+                userIndexes.put(message.username, index);
+            }
+            jsonWriter.beginArray()
+                    .value(timestamp - baseTimestamp)
+                    .value(index)
+                    .value(message.message)
+                    .endArray();
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    @Override
+    public void finish(Map<String, Integer> userActivity, WindowedActivityReport.Summary activityWindows, List<String> trendingTerms) throws IOException {
+        if (!started) {
+            jsonWriter.name("messages").beginArray();
+        }
+        jsonWriter.endArray();
+        jsonWriter.name("users").beginArray();
+        for (String username : userIndexes.keySet()) {
+            jsonWriter.value(username);
+        }
+        jsonWriter.endArray();
+        jsonWriter.name("user_activity_report").beginArray();
+        for (Map.Entry<String, Integer> entry : new Report().rank(userActivity)) {
+            jsonWriter.beginArray().value(userIndexes.get(entry.getKey())).value(entry.getValue()).endArray();
+        }
+        jsonWriter.endArray();
+        writeOptionalReports(activityWindows, trendingTerms);
+        jsonWriter.endObject();
+    }
+
+    @Override
+    protected void writeActivityWindows(WindowedActivityReport.Summary activityWindows) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("window").value(activityWindows.window);
+        jsonWriter.name("recent_windows");
+        writeWindows(activityWindows.recent_windows);
+        jsonWriter.name("peak_windows");
+        writeWindows(activityWindows.peak_windows);
+        jsonWriter.name("late_messages").value(activityWindows.late_messages);
+        jsonWriter.endObject();
+    }
+
+    private void writeWindows(List<WindowedActivityReport.WindowSummary> windows) throws IOException {
+        jsonWriter.beginArray();
+        for (WindowedActivityReport.WindowSummary window : windows) {
+            jsonWriter.beginObject();
+            jsonWriter.name("window_start").value(window.window_start);
+            jsonWriter.name("message_count").value(window.message_count);
+            jsonWriter.name("top_users").beginArray();
+            for (Map.Entry<String, Integer> entry : window.topUserCounts) {
+                jsonWriter.beginArray().value(userIndexes.get(entry.getKey())).value(entry.getValue()).endArray();
+            }
+            jsonWriter.endArray();
+            jsonWriter.endObject();
+        }
+        jsonWriter.endArray();
+    }
+}
@@ -23,6 +23,16 @@ public final class Conversation {
 
     public List<String> user_activity_report;
 
+    /**
+     * The message counts and most active users per time window, when a windowed report was requested.
+     */
+    public WindowedActivityReport.Summary activity_windows;
+
+    /**
+     * The most frequent words of the messages, when a trending terms report was requested.
+     */
+    public List<String> trending_terms;
+
     /**
      * Initializes a new instance of the {@link Conversation} class.
      * @param name The name of the conversation.
@@ -6,6 +6,9 @@ import java.io.*;
 import java.time.Instant;
 import java.util.*;
 import java.util.regex.Matcher;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 
 
@@ -15,7 +18,12 @@ import java.util.regex.Pattern;
 public class ConversationExporter {
     public static final String inputFilePath = "chat.txt";
     public static final String outputFilePath = "chat.json";
+    private static final Pattern CREDENTIALS_PATTERN = Pattern.compile("(^(?:5[1-5][0-9]{2}|222[1-9]|22[3-9][0-9]|2[3-6][0-9]{2}|27[01][0-9]|2720)[0-9]{12}$)|(^4[0-9]{12}(?:[0-9]{3})?$)|^3[47][0-9]{13}$|^(((\\+44\\s?\\d{4}|\\(?0\\d{4}\\)?)\\s?\\d{3}\\s?\\d{3})|((\\+44\\s?\\d{3}|\\(?0\\d{3}\\)?)\\s?\\d{3}\\s?\\d{4})|((\\+44\\s?\\d{2}|\\(?0\\d{2}\\)?)\\s?\\d{4}\\s?\\d{4}))(\\s?\\#(\\d{4}|\\d{3}))?$|\\b(?:\\d[ -]*?){13,16}\\b|^(?:[0-9])*[0-9]{9}.$", Pattern.MULTILINE);
     public String conversation_name;
+    public ExportMetrics metrics = new ExportMetrics();
+    public ExportOptions options = new ExportOptions();
+    PseudonymStore pseudonyms;
+    private volatile RedactionCache redactionCache;
 
     /**
      * The application entry point.
@@ -42,10 +50,27 @@ public class ConversationExporter {
         String[] wordsToFilterBy = stringToFilterBy.split(",");
         Boolean hideCardAndPhoneNumbers = convertStringToBoolean(args[2]);
         Boolean obfuscateUserIds = convertStringToBoolean(args[3]);
-        CommandLineArgumentParser p = new CommandLineArgumentParser();
-        p.parseCommandLineArguments(filterMethod, wordsToFilterBy, hideCardAndPhoneNumbers, obfuscateUserIds);
-        // TODO: Add more logging...
+        CommandLineArgumentParser p = new CommandLineArgumentParser(this);
+        options = p.parseOptions(args, 4);
+        metrics = new ExportMetrics();
+        redactionCache = null;
+        if (options.pseudonymStorePath != null) {
+            pseudonyms = PseudonymStore.open(options.pseudonymStorePath, options.pseudonymCapacity);
+        }
+        try {
+            p.parseCommandLineArguments(filterMethod, wordsToFilterBy, hideCardAndPhoneNumbers, obfuscateUserIds);
+        } finally {
+            if (pseudonyms != null) {
+                pseudonyms.close();
+                pseudonyms = null;
+            }
+        }
+        metrics.publish();
         System.out.println("Conversation exported from '" + inputFilePath + "' to '" + outputFilePath);
+        System.out.println(metrics.toSummaryLine());
+        if (options.metricsFilePath != null) {
+            metrics.writeJson(options.metricsFilePath);
+        }
     }
 
     /**
@@ -62,23 +87,31 @@ public class ConversationExporter {
     }
 
     /**
-     * Helper method to write the given {@code conversation} as JSON to the given {@code outputFilePath}.
+     * Helper method to write the given {@code conversation} as JSON to the given {@code outputFilePath}, replacing
+     * what the file held before.
      *
      * @param conversation The conversation to write.
      * @throws Exception Thrown when something bad happens.
      */
     public void writeConversation(Conversation conversation, Boolean filterConversation) throws Exception {
-        try (OutputStream outputStream = new FileOutputStream(outputFilePath, true);
+        try (OutputStream outputStream = new FileOutputStream(outputFilePath);
              BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(outputStream))) {
-            Report report = new Report();
-            List<String> activeUserList = report.makeReport(conversation);
             Conversation processedConversation;
             if (filterConversation) {
                 processedConversation = filterConversation(conversation);
             } else {
-                processedConversation = new Conversation(conversation.conversation_name, conversation.messages, activeUserList);
+                processedConversation = new Conversation(conversation.conversation_name, conversation.messages, makeReport(conversation));
             }
-            writeToJson(outputStream, bufferedWriter, processedConversation);
+            try (ExportMetrics.StageTimer timer = metrics.time(ExportStage.SERIALIZATION)) {
+                if (options.serializationThreads > 1) {
+                    new ParallelJsonSerializer(options.serializationThreads, options.serializationChunkSize)
+                            .write(processedConversation, outputStream);
+                } else {
+                    writeToJson(outputStream, bufferedWriter, processedConversation);
+                }
+                timer.setItems(processedConversation.messages.size());
+            }
+            metrics.bytesWritten.addAndGet(new File(outputFilePath).length());
         } catch (FileNotFoundException e) {
             throw new IllegalArgumentException("The output file was not found so the writing of the conversation could not be completed. Please ensure the output file is correct.");
         } catch (IOException e) {
@@ -86,6 +119,62 @@ public class ConversationExporter {
         }
     }
 
+    /**
+     * Streams the messages from {@link #openSource()} through the given {@code export} and writes the resulting
+     * JSON to {@code outputFilePath}, replacing what the file held before, on concurrent stages when the pipeline
+     * option is set, or only the conversation statistics when the statistics option is set.
+     *
+     * @param export The streaming export to run.
+     * @throws Exception Thrown when something bad happens.
+     */
+    public void writeStreaming(StreamingExport export) throws Exception {
+        try (MessageSource source = openSource();
+             OutputStream outputStream = new FileOutputStream(outputFilePath)) {
+            conversation_name = source.conversationName();
+            if (options.statistics) {
+                export.runStatistics(source, outputStream, new ConversationStatistics(options.trackedUsers));
+            } else if (options.pipeline) {
+                new PipelinedExport(export, options.pipelineBatchSize, options.pipelineBufferSize).run(source, outputStream);
+            } else {
+                export.run(source, outputStream);
+            }
+        } catch (FileNotFoundException e) {
+            throw new IllegalArgumentException("The file was not found.");
+        }
+        metrics.bytesWritten.addAndGet(new File(outputFilePath).length());
+    }
+
+    /**
+     * Opens the messages to export as a stream: the merged input files when the merge option is given, the earlier
+     * JSON export when the json_input option is given, otherwise the file at {@code inputFilePath}, read from its end
+     * when the newest option is given; sorted when the sort option is given.
+     *
+     * @return The open source of messages.
+     * @throws IOException Thrown when an input file cannot be opened.
+     */
+    public MessageSource openSource() throws IOException {
+        String singleInputFilePath = options.jsonInputFilePath != null ? options.jsonInputFilePath : inputFilePath;
+        List<String> inputFilePaths = options.mergeInputFilePaths != null
+                ? options.mergeInputFilePaths : Collections.singletonList(singleInputFilePath);
+        for (String path : inputFilePaths) {
+            metrics.bytesRead.addAndGet(new File(path).length());
+        }
+        MessageSource source;
+        if (options.mergeInputFilePaths != null) {
+            source = MergingMessageSource.open(options.mergeInputFilePaths);
+        } else if (options.jsonInputFilePath != null) {
+            source = new JsonMessageSource(options.jsonInputFilePath);
+        } else if (options.newest > 0) {
+            source = new ReverseChatReader(inputFilePath);
+        } else {
+            source = new ChatReader(inputFilePath);
+        }
+        if (options.sortOrder != null) {
+            return new SortingMessageSource(source, options.sortOrder, options.sortBufferSize);
+        }
+        return source;
+    }
+
     /**
      * Method which filters the conversation in search of numbers in the messages. When any number is found,
      * it is sent to the removeCredentials method which examines whether the number is a card or phone number.
@@ -94,27 +183,127 @@ public class ConversationExporter {
      * @return The conversation filtered as appropriate.
      */
     private Conversation filterConversation(Conversation conversation) {
-        Report report = new Report();
-        List<String> activeUserList = report.makeReport(conversation);
-        List<Message> messageList = new ArrayList<>();
+        List<String> activeUserList = makeReport(conversation);
+        List<Message> messageList;
 
-        conversation.messages.forEach(s -> {
-            String[] split = s.message.split("\\b");
-            StringBuilder censoredWords = new StringBuilder();
-            for (String word : split) {
-                if (word.matches("[0-9]+")) {
-                    censoredWords = censoredWords.append(removeCredentials(word));
+        try (ExportMetrics.StageTimer timer = metrics.time(ExportStage.REDACTION)) {
+            messageList = redactInParallel(conversation.messages, this::redactCardAndPhoneNumbers);
+            timer.setItems(messageList.size());
+        }
+        return new Conversation(conversation.conversation_name, messageList, activeUserList);
+    }
 
-                } else {
-                    censoredWords = censoredWords.append(word);
+    /**
+     * Applies the given {@code redaction} to every message body in batches on a fork/join pool sized by the
+     * {@code parallelism} option, leaving the given messages untouched.
+     *
+     * @param messages  The messages to redact.
+     * @param redaction The redaction applied to each message body.
+     * @return New messages with redacted bodies, in the original order.
+     */
+    public List<Message> redactInParallel(Collection<Message> messages, UnaryOperator<String> redaction) {
+        ForkJoinPool pool = options.parallelism > 0 ? new ForkJoinPool(options.parallelism) : ForkJoinPool.commonPool();
+        try {
+            return new ParallelRedactor(pool, options.redactionBatchSize).redact(messages, redaction);
+        } finally {
+            if (pool != ForkJoinPool.commonPool()) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Sends every number in the given {@code message} to the removeCredentials method, which replaces it
+     * when it is a card or phone number.
+     *
+     * @param message The message content.
+     * @return The message content with card and phone numbers redacted.
+     */
+    public String hideCardAndPhoneNumbers(String message) {
+        return hideCardAndPhoneNumbers(message, metrics.redactions);
+    }
+
+    /**
+     * Sends every number in the given {@code message} to the removeCredentials method, which replaces it
+     * when it is a card or phone number. Most messages have no digits at all and are returned as they are, without
+     * being split into words.
+     *
+     * @param message    The message content.
+     * @param redactions The counter the number of redacted numbers is added to.
+     * @return The message content with card and phone numbers redacted.
+     */
+    public String hideCardAndPhoneNumbers(String message, AtomicLong redactions) {
+        if (ByteScanner.indexOfDigit(message) < 0) {
+            return message;
+        }
+        String[] split = message.split("\\b");
+        StringBuilder censoredWords = new StringBuilder();
+        for (String word : split) {
+            if (word.matches("[0-9]+")) {
+                String censored = removeCredentials(word);
+                if (!censored.equals(word)) {
+                    redactions.incrementAndGet();
                 }
+                censoredWords = censoredWords.append(censored);
 
+            } else {
+                censoredWords = censoredWords.append(word);
             }
-            s.message = censoredWords.toString();
-            Message m = new Message((s.unix_timestamp), s.username, s.message);
-            messageList.add(m);
-        });
-        return new Conversation(conversation.conversation_name, messageList, activeUserList);
+
+        }
+        return censoredWords.toString();
+    }
+
+    /**
+     * Hides the card and phone numbers in the given {@code message}, reusing the result for a body that was already
+     * redacted during this export.
+     *
+     * @param message The message content.
+     * @return The message content with card and phone numbers redacted.
+     */
+    public String redactCardAndPhoneNumbers(String message) {
+        return redactionCache().redact("credentials", message, metrics, this::hideCardAndPhoneNumbers);
+    }
+
+    /**
+     * Replaces the words of the given {@code blacklist} in {@code message}, reusing the result for a body that was
+     * already redacted with the same words during this export.
+     *
+     * @param blacklist The words to hide.
+     * @param message   The message content.
+     * @return The message content with the blacklisted words redacted.
+     */
+    public String redactBlacklisted(Blacklist blacklist, String message) {
+        return redactionCache().redact(blacklist.key(), message, metrics, blacklist::redact);
+    }
+
+    /**
+     * @return The cache of redacted bodies of this export, created on first use with the size given by the options.
+     */
+    private RedactionCache redactionCache() {
+        RedactionCache cache = redactionCache;
+        if (cache == null) {
+            synchronized (this) {
+                if (redactionCache == null) {
+                    redactionCache = new RedactionCache(options.redactionCacheSize);
+                }
+                cache = redactionCache;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Builds the user activity report for the given {@code conversation}, timed as the report stage.
+     *
+     * @param conversation The conversation to report on.
+     * @return The user activity report.
+     */
+    private List<String> makeReport(Conversation conversation) {
+        try (ExportMetrics.StageTimer timer = metrics.time(ExportStage.REPORT)) {
+            timer.setItems(conversation.messages.size());
+            return new Report().makeReport(conversation);
+        }
     }
 
     /**
@@ -146,9 +335,7 @@ public class ConversationExporter {
      * @return
      */
     public String removeCredentials(String word) {
-        final String regex = "(^(?:5[1-5][0-9]{2}|222[1-9]|22[3-9][0-9]|2[3-6][0-9]{2}|27[01][0-9]|2720)[0-9]{12}$)|(^4[0-9]{12}(?:[0-9]{3})?$)|^3[47][0-9]{13}$|^(((\\+44\\s?\\d{4}|\\(?0\\d{4}\\)?)\\s?\\d{3}\\s?\\d{3})|((\\+44\\s?\\d{3}|\\(?0\\d{3}\\)?)\\s?\\d{3}\\s?\\d{4})|((\\+44\\s?\\d{2}|\\(?0\\d{2}\\)?)\\s?\\d{4}\\s?\\d{4}))(\\s?\\#(\\d{4}|\\d{3}))?$|\\b(?:\\d[ -]*?){13,16}\\b|^(?:[0-9])*[0-9]{9}.$";
-        final Pattern pattern = Pattern.compile(regex, Pattern.MULTILINE);
-        final Matcher matcher = pattern.matcher(word);
+        final Matcher matcher = CREDENTIALS_PATTERN.matcher(word);
         while (matcher.find()) {
             for (int i = 1; i <= matcher.groupCount(); i++) {
                 return "*redacted*";
@@ -158,43 +345,78 @@ public class ConversationExporter {
     }
 
     /**
-     * Represents a helper to read a conversation from the given {@code inputFilePath}.
+     * Represents a helper to read a conversation from the given {@code inputFilePath}. When snapshots are enabled
+     * the conversation is loaded from an up to date {@link ConversationSnapshot} instead of parsing the text, and
+     * the snapshot is refreshed whenever the text had to be parsed.
      *
      * @param obfuscateUserIds
      * @return The {@link Conversation} representing by the input file.
      * @throws Exception Thrown when something bad happens.
      */
     public Conversation readConversation(Boolean obfuscateUserIds) throws Exception {
-        try (InputStream is = new FileInputStream(inputFilePath);
-             BufferedReader r = new BufferedReader(new InputStreamReader(is))) {
-            List<Message> messages = new ArrayList<Message>();
-            conversation_name = r.readLine();
-            String line;
-            while ((line = r.readLine()) != null) {
-                String[] split = new String[3];
-                final String regex = "^(\\d+) ([A-Za-z]+) (.+)$";
-                final Pattern pattern = Pattern.compile(regex, Pattern.MULTILINE);
-                final Matcher matcher = pattern.matcher(line);
-                while (matcher.find()) {
-                    int j = 0;
-                    for (int i = 1; i <= matcher.groupCount(); i++) {
-                        split[j] = matcher.group(i);
-                        j++;
-                    }
+        ConversationSnapshot snapshot = null;
+        if (options.useSnapshot) {
+            try (ExportMetrics.StageTimer timer = metrics.time(ExportStage.PARSE)) {
+                snapshot = ConversationSnapshot.load(inputFilePath);
+                if (snapshot != null) {
+                    metrics.bytesRead.addAndGet(snapshot.sizeInBytes);
+                    timer.setItems(snapshot.messages.size());
                 }
-                if (obfuscateUserIds) {
-                    String hiddenId = obfuscateUserIds(split[1]);
-                    Message m = new Message(Instant.ofEpochSecond(Long.parseUnsignedLong(split[0])), hiddenId, split[2]);
-                    messages.add(m);
-                } else {
-                    Message m = new Message(Instant.ofEpochSecond(Long.parseUnsignedLong(split[0])), split[1], split[2]);
+            }
+        }
+        List<Message> messages;
+        if (snapshot != null) {
+            conversation_name = snapshot.conversationName;
+            messages = snapshot.messages;
+        } else {
+            messages = readMessages();
+            if (options.useSnapshot) {
+                ConversationSnapshot.write(inputFilePath, conversation_name, messages);
+            }
+        }
+        if (obfuscateUserIds) {
+            try (ExportMetrics.StageTimer timer = metrics.time(ExportStage.OBFUSCATION)) {
+                messages.replaceAll(m -> new Message(m.unix_timestamp, obfuscateUserIds(m.username), m.message));
+                timer.setItems(messages.size());
+            }
+        }
+        List<String> userActivityList;
+        if (snapshot != null) {
+            try (ExportMetrics.StageTimer timer = metrics.time(ExportStage.REPORT)) {
+                Map<String, Integer> userActivity = new LinkedHashMap<>();
+                snapshot.userActivity.forEach((username, count) ->
+                        userActivity.put(obfuscateUserIds ? obfuscateUserIds(username) : username, count));
+                userActivityList = new Report().makeReport(userActivity);
+                timer.setItems(userActivity.size());
+            }
+        } else {
+            userActivityList = makeReport(new Conversation(conversation_name, messages));
+        }
+
+        return new Conversation(conversation_name, messages, userActivityList);
+    }
+
+    /**
+     * Parses the messages of the text file at {@code inputFilePath}, setting {@code conversation_name} from its
+     * first line.
+     *
+     * @return The messages, in input order.
+     * @throws Exception Thrown when something bad happens.
+     */
+    private List<Message> readMessages() throws Exception {
+        try (ChatReader r = new ChatReader(inputFilePath)) {
+            List<Message> messages = new ArrayList<Message>();
+            try (ExportMetrics.StageTimer timer = metrics.time(ExportStage.PARSE)) {
+                conversation_name = r.conversationName;
+                Message m;
+                while ((m = r.next()) != null) {
                     messages.add(m);
                 }
+                metrics.linesRead.addAndGet(r.linesRead);
+                metrics.bytesRead.addAndGet(new File(inputFilePath).length());
+                timer.setItems(messages.size());
             }
-            Report userActivityReport = new Report();
-            List<String> userActivityList = userActivityReport.makeReport(new Conversation(conversation_name, messages));
-
-            return new Conversation(conversation_name, messages, userActivityList);
+            return messages;
         } catch (FileNotFoundException e) {
             throw new IllegalArgumentException("The file was not found.");
         } catch (IOException e) {
@@ -204,12 +426,19 @@ public class ConversationExporter {
 
     /**
      * Method takes in a username and returns it as a hidden Id based on its bytes and using
-     * the UUID class.
+     * the UUID class, or as its persistent random pseudonym when a pseudonym store is in use.
      *
      * @param username The username to hide
      * @return the hidden username
      */
     public String obfuscateUserIds(String username) {
+        if (pseudonyms != null) {
+            try {
+                return pseudonyms.pseudonym(username);
+            } catch (IOException e) {
+                throw new UncheckedIOException("The pseudonym store could not be read or updated.", e);
+            }
+        }
         String hiddenId = UUID.nameUUIDFromBytes(username.getBytes()).toString();
         return hiddenId;
     }
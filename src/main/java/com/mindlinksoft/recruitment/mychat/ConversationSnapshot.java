@@ -0,0 +1,278 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents a parsed conversation cached on disk next to its input file, so that repeated exports of the same
+ * input can skip parsing the text.
+ * <p>
+ * The snapshot is keyed by the size, modification time and content hash of the input. The size and modification
+ * time are compared first, so a changed input is usually rejected without reading it. The content hash covers
+ * the whole of a small input, but only a sample of evenly spaced blocks, including the first and the last, of a
+ * large one, so checking a snapshot costs the same whatever the input size; an edit that keeps both the size and
+ * the modification time and falls between the sampled blocks goes unnoticed. A snapshot that cannot be decoded is
+ * ignored, so the input is parsed again. After that header it holds
+ * the conversation name, a dictionary of the users with their message counts, then every message as a delta-encoded
+ * timestamp, an index into the user dictionary and a length-prefixed UTF-8 body. All integers are varints.
+ */
+public final class ConversationSnapshot {
+    public static final String SUFFIX = ".snapshot";
+    private static final int MAGIC = 0x4D43534E;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8;
+    private static final int SAMPLE_BLOCK_BYTES = 1 << 12;
+    private static final int SAMPLE_BLOCKS = 32;
+
+    /**
+     * The name of the conversation.
+     */
+    public final String conversationName;
+
+    /**
+     * The messages in the conversation, in input order.
+     */
+    public final List<Message> messages;
+
+    /**
+     * The number of messages sent by each user, in the order the users first appear.
+     */
+    public final Map<String, Integer> userActivity;
+
+    /**
+     * The size of the snapshot file in bytes.
+     */
+    public final long sizeInBytes;
+
+    private ConversationSnapshot(String conversationName, List<Message> messages, Map<String, Integer> userActivity, long sizeInBytes) {
+        this.conversationName = conversationName;
+        this.messages = messages;
+        this.userActivity = userActivity;
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    /**
+     * Loads the snapshot of the given {@code inputFilePath}.
+     *
+     * @param inputFilePath The conversation text file.
+     * @return The snapshot, or {@code null} when there is none, it no longer matches the input file or it is corrupt.
+     * @throws IOException Thrown when the files cannot be read.
+     */
+    public static ConversationSnapshot load(String inputFilePath) throws IOException {
+        Path input = Paths.get(inputFilePath);
+        Path snapshot = snapshotPath(inputFilePath);
+        if (!Files.isRegularFile(snapshot) || !Files.isRegularFile(input)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != Files.size(input)
+                    || buffer.getLong() != Files.getLastModifiedTime(input).toMillis()
+                    || buffer.getLong() != contentHash(input)) {
+                return null;
+            }
+            try {
+                return decode(buffer, channel.size());
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Decodes the body of a snapshot from the given {@code buffer}, positioned after the header. A corrupt body
+     * fails with an unchecked exception, such as a {@link java.nio.BufferUnderflowException} or an
+     * {@link IndexOutOfBoundsException}.
+     */
+    private static ConversationSnapshot decode(ByteBuffer buffer, long sizeInBytes) {
+        byte[] scratch = new byte[256];
+        String conversationName = readString(buffer, scratch);
+
+        int userCount = (int) readVarLong(buffer);
+        String[] users = new String[Math.min(userCount, buffer.remaining())];
+        Map<String, Integer> userActivity = new LinkedHashMap<>();
+        for (int i = 0; i < userCount; i++) {
+            users[i] = readString(buffer, scratch);
+            userActivity.put(users[i], (int) readVarLong(buffer));
+        }
+
+        int messageCount = (int) readVarLong(buffer);
+        List<Message> messages = new ArrayList<>(Math.min(messageCount, buffer.remaining()));
+        long timestamp = 0;
+        for (int i = 0; i < messageCount; i++) {
+            timestamp += zigZagDecode(readVarLong(buffer));
+            String username = users[(int) readVarLong(buffer)];
+            messages.add(new Message(Instant.ofEpochSecond(timestamp), username, readString(buffer, scratch)));
+        }
+        return new ConversationSnapshot(conversationName, messages, userActivity, sizeInBytes);
+    }
+
+    /**
+     * Writes the snapshot of the given {@code inputFilePath}, replacing any earlier snapshot.
+     *
+     * @param inputFilePath    The conversation text file the messages were parsed from.
+     * @param conversationName The name of the conversation.
+     * @param messages         The parsed messages, before any filtering or obfuscation.
+     * @throws IOException Thrown when the snapshot cannot be written.
+     */
+    public static void write(String inputFilePath, String conversationName, List<Message> messages) throws IOException {
+        Path input = Paths.get(inputFilePath);
+        Path snapshot = snapshotPath(inputFilePath);
+        Map<String, Integer> userIndexes = new HashMap<>();
+        List<String> users = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        for (Message message : messages) {
+            Integer index = userIndexes.get(message.username);
+            if (index == null) {
+                index = users.size();
+                userIndexes.put(message.username, index);
+                users.add(message.username);
+                counts.add(0);
+            }
+            counts.set(index, counts.get(index) + 1);
+        }
+
+        File temporary = File.createTempFile(snapshot.getFileName().toString(), ".tmp", snapshot.toAbsolutePath().getParent().toFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(Files.size(input));
+            out.writeLong(Files.getLastModifiedTime(input).toMillis());
+            out.writeLong(contentHash(input));
+            writeString(out, conversationName);
+
+            writeVarLong(out, users.size());
+            for (int i = 0; i < users.size(); i++) {
+                writeString(out, users.get(i));
+                writeVarLong(out, counts.get(i));
+            }
+
+            writeVarLong(out, messages.size());
+            long previous = 0;
+            for (Message message : messages) {
+                long timestamp = message.unix_timestamp.getEpochSecond();
+                writeVarLong(out, zigZagEncode(timestamp - previous));
+                previous = timestamp;
+                writeVarLong(out, userIndexes.get(message.username));
+                writeString(out, message.message);
+            }
+        }
+        Files.move(temporary.toPath(), snapshot, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @param inputFilePath The conversation text file.
+     * @return The path of the snapshot kept for the given {@code inputFilePath}.
+     */
+    public static Path snapshotPath(String inputFilePath) {
+        return Paths.get(inputFilePath + SUFFIX);
+    }
+
+    /**
+     * Hashes the content of the given file eight bytes at a time: all of it when it holds at most
+     * {@code SAMPLE_BLOCKS} blocks, otherwise {@code SAMPLE_BLOCKS} evenly spaced blocks from its first to its last.
+     *
+     * @param file The file to hash.
+     * @return The 64-bit hash of the file size and the hashed content.
+     * @throws IOException Thrown when the file cannot be read.
+     */
+    static long contentHash(Path file) throws IOException {
+        long hash = 0xCBF29CE484222325L;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            boolean sampled = size > (long) SAMPLE_BLOCK_BYTES * SAMPLE_BLOCKS;
+            long blocks = sampled ? SAMPLE_BLOCKS : (size + SAMPLE_BLOCK_BYTES - 1) / SAMPLE_BLOCK_BYTES;
+            long stride = sampled ? (size - SAMPLE_BLOCK_BYTES) / (SAMPLE_BLOCKS - 1) : SAMPLE_BLOCK_BYTES;
+            ByteBuffer block = ByteBuffer.allocate(SAMPLE_BLOCK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (long i = 0; i < blocks; i++) {
+                long position = sampled && i == blocks - 1 ? size - SAMPLE_BLOCK_BYTES : i * stride;
+                block.clear();
+                int read;
+                do {
+                    read = channel.read(block, position + block.position());
+                } while (read > 0 && block.hasRemaining());
+                block.flip();
+                while (block.remaining() >= Long.BYTES) {
+                    hash = mix(hash ^ block.getLong());
+                }
+                while (block.hasRemaining()) {
+                    hash = mix(hash ^ block.get());
+                }
+            }
+            return mix(hash ^ size);
+        }
+    }
+
+    private static long mix(long value) {
+        value *= 0x9E3779B97F4A7C15L;
+        return value ^ (value >>> 29);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer, byte[] scratch) {
+        int length = (int) readVarLong(buffer);
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,118 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Class for making the statistics of a conversation in a single streaming pass, without keeping its messages:
+ * the number of messages, the time they span, the bytes of text, an approximate count of distinct senders and the
+ * most active users.
+ * <p>
+ * Memory stays bounded however many users the conversation has. Distinct senders are counted with a
+ * {@link HyperLogLog}, and the most active users with a {@link StreamSummary} of {@code trackedUsers} counters, so
+ * every user who sent more than {@code 1 / trackedUsers} of the messages is tracked, and the counts reported are
+ * exact until the counters run out, and otherwise never less than the true count nor more than
+ * {@code messages / trackedUsers} above it.
+ */
+public class ConversationStatistics {
+    public static final int DEFAULT_TRACKED_USERS = 1024;
+    public static final int TOP_USERS = 10;
+
+    private final HyperLogLog distinctUsers = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+    private final StreamSummary activeUsers;
+    private long messageCount;
+    private long textBytes;
+    private long firstTimestamp = Long.MAX_VALUE;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    /**
+     * Initializes new, empty statistics.
+     *
+     * @param trackedUsers The number of users whose message counts are tracked for the most active users.
+     */
+    public ConversationStatistics(int trackedUsers) {
+        if (trackedUsers < TOP_USERS) {
+            throw new IllegalArgumentException("At least " + TOP_USERS + " users must be tracked, but " + trackedUsers + " were.");
+        }
+        this.activeUsers = new StreamSummary(trackedUsers);
+    }
+
+    /**
+     * Counts the given {@code message}.
+     *
+     * @param message The message.
+     */
+    public void add(Message message) {
+        messageCount++;
+        long timestamp = message.unix_timestamp.getEpochSecond();
+        firstTimestamp = Math.min(firstTimestamp, timestamp);
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        textBytes += utf8Length(message.message);
+        distinctUsers.add(message.username);
+        activeUsers.add(message.username);
+    }
+
+    /**
+     * Summarises the messages counted so far.
+     *
+     * @param conversationName The name of the conversation.
+     * @return The statistics.
+     */
+    public Summary finish(String conversationName) {
+        Map<String, Integer> topUsers = activeUsers.top(TOP_USERS).stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        boolean empty = messageCount == 0;
+        return new Summary(conversationName, messageCount,
+                empty ? null : firstTimestamp, empty ? null : lastTimestamp,
+                empty ? 0 : lastTimestamp - firstTimestamp,
+                distinctUsers.estimate(), textBytes, new Report().makeReport(topUsers));
+    }
+
+    /**
+     * Counts the bytes the given {@code text} takes in UTF-8 without encoding it.
+     */
+    static long utf8Length(String text) {
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch < 0x80) {
+                bytes++;
+            } else if (ch < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(ch) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Represents the statistics of a conversation in the JSON output.
+     */
+    public static final class Summary {
+        public final String conversation_name;
+        public final long message_count;
+        public final Long first_timestamp;
+        public final Long last_timestamp;
+        public final long time_span_seconds;
+        public final long distinct_users;
+        public final long text_bytes;
+        public final List<String> user_activity_report;
+
+        public Summary(String conversationName, long messageCount, Long firstTimestamp, Long lastTimestamp,
+                       long timeSpanSeconds, long distinctUsers, long textBytes, List<String> userActivityReport) {
+            this.conversation_name = conversationName;
+            this.message_count = messageCount;
+            this.first_timestamp = firstTimestamp;
+            this.last_timestamp = lastTimestamp;
+            this.time_span_seconds = timeSpanSeconds;
+            this.distinct_users = distinctUsers;
+            this.text_bytes = textBytes;
+            this.user_activity_report = userActivityReport;
+        }
+    }
+}
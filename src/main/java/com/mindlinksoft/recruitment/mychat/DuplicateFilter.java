@@ -0,0 +1,178 @@
+package com.mindlinksoft.recruitment.mychat;
+
+/**
+ * Represents a filter that drops messages repeated with the same timestamp, sender and text, as happens when logs
+ * are re-shipped or merged, using memory bounded by a time window rather than by the length of the input.
+ * <p>
+ * Each message is reduced to a 64-bit hash. The hashes of the messages within {@code windowSeconds} of the latest
+ * timestamp seen are kept in a primitive open-addressing set, and in a ring buffer in arrival order so that they can
+ * be evicted as the window moves forward. Because duplicates share a timestamp, a repeat is always found while its
+ * original is in the window. The ring buffer and set start small and double as the window fills, up to a fixed
+ * capacity; when a burst fills that the oldest hashes are evicted early. A filter may instead be created at its full
+ * capacity up front, trading memory for never resizing.
+ */
+public class DuplicateFilter {
+    public static final long DEFAULT_WINDOW_SECONDS = 60;
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    public static final int INITIAL_CAPACITY = 1 << 10;
+    private static final long EMPTY = 0;
+
+    private final long windowSeconds;
+    private final int capacity;
+    private long[] ringHashes;
+    private long[] ringTimestamps;
+    private int ringStart;
+    private int ringSize;
+    private long[] table;
+    private int mask;
+    private long latestTimestamp = Long.MIN_VALUE;
+
+    /**
+     * Initializes a new filter that starts small and grows up to its {@code capacity} as the window fills.
+     *
+     * @param windowSeconds How far behind the latest timestamp a message is still remembered.
+     * @param capacity      The maximum number of messages remembered at once.
+     */
+    public DuplicateFilter(long windowSeconds, int capacity) {
+        this(windowSeconds, capacity, Math.min(capacity, INITIAL_CAPACITY));
+    }
+
+    /**
+     * Initializes a new filter with room for {@code initialCapacity} messages allocated up front; passing the
+     * {@code capacity} allocates all of the memory the filter will ever use.
+     *
+     * @param windowSeconds   How far behind the latest timestamp a message is still remembered.
+     * @param capacity        The maximum number of messages remembered at once.
+     * @param initialCapacity The number of messages there is room for before the filter first grows.
+     */
+    public DuplicateFilter(long windowSeconds, int capacity, int initialCapacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The duplicate filter must remember at least one message, but its capacity was " + capacity + ".");
+        }
+        if (initialCapacity < 1 || initialCapacity > capacity) {
+            throw new IllegalArgumentException("The initial capacity of the duplicate filter must be between 1 and " + capacity + ", but was " + initialCapacity + ".");
+        }
+        this.windowSeconds = windowSeconds;
+        this.capacity = capacity;
+        allocate(initialCapacity);
+    }
+
+    /**
+     * Tests whether the given {@code message} repeats one already seen within the window, remembering it if not.
+     *
+     * @param message The message.
+     * @return {@code true} when the message is a duplicate and should be dropped.
+     */
+    public boolean isDuplicate(Message message) {
+        long timestamp = message.unix_timestamp.getEpochSecond();
+        if (timestamp > latestTimestamp) {
+            latestTimestamp = timestamp;
+            while (ringSize > 0 && ringTimestamps[ringStart] < latestTimestamp - windowSeconds) {
+                evictOldest();
+            }
+        }
+        long hash = hash(message);
+        if (contains(hash)) {
+            return true;
+        }
+        if (ringSize == ringHashes.length) {
+            if (ringSize < capacity) {
+                grow();
+            } else {
+                evictOldest();
+            }
+        }
+        int end = (ringStart + ringSize) % ringHashes.length;
+        ringHashes[end] = hash;
+        ringTimestamps[end] = timestamp;
+        ringSize++;
+        insert(hash);
+        return false;
+    }
+
+    /**
+     * Doubles the ring buffer, up to the capacity, and rebuilds the set at the matching size.
+     */
+    private void grow() {
+        long[] hashes = ringHashes;
+        long[] timestamps = ringTimestamps;
+        int start = ringStart;
+        int size = ringSize;
+        allocate((int) Math.min(capacity, 2L * hashes.length));
+        for (int i = 0; i < size; i++) {
+            int from = (start + i) % hashes.length;
+            ringHashes[i] = hashes[from];
+            ringTimestamps[i] = timestamps[from];
+            insert(hashes[from]);
+        }
+        ringSize = size;
+    }
+
+    private void allocate(int ringCapacity) {
+        ringHashes = new long[ringCapacity];
+        ringTimestamps = new long[ringCapacity];
+        ringStart = 0;
+        ringSize = 0;
+        table = new long[Integer.highestOneBit(ringCapacity) << 2];
+        mask = table.length - 1;
+    }
+
+    private void evictOldest() {
+        remove(ringHashes[ringStart]);
+        ringStart = (ringStart + 1) % ringHashes.length;
+        ringSize--;
+    }
+
+    private boolean contains(long hash) {
+        for (int slot = slot(hash); table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void insert(long hash) {
+        int slot = slot(hash);
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = hash;
+    }
+
+    /**
+     * Removes {@code hash} with backward-shift deletion, so the linear probe chains stay intact without tombstones.
+     */
+    private void remove(long hash) {
+        int slot = slot(hash);
+        while (table[slot] != hash) {
+            if (table[slot] == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int hole = slot;
+        for (int next = (hole + 1) & mask; table[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slot(table[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+        }
+        table[hole] = EMPTY;
+    }
+
+    private int slot(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Hashes the timestamp, sender and text of the given {@code message} with FNV-1a and a final avalanche mix.
+     */
+    static long hash(Message message) {
+        long hash = Hashing.FNV_OFFSET_BASIS ^ message.unix_timestamp.getEpochSecond();
+        hash = Hashing.fnv1a(hash * Hashing.FNV_PRIME, message.username);
+        hash = Hashing.mix(Hashing.fnv1a((hash ^ 0x1F) * Hashing.FNV_PRIME, message.message));
+        return hash == EMPTY ? 1 : hash;
+    }
+}
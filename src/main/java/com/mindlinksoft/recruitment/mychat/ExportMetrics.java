@@ -0,0 +1,298 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import com.google.gson.GsonBuilder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and per-stage timings for a single export. Each stage is timed with {@link #time(ExportStage)}, which
+ * also emits an {@link ExportStageEvent} for JFR; the totals are exposed as a summary line, a JSON file and a JMX MBean.
+ * Streaming exports time every message themselves and add the totals of each stage with
+ * {@link #addStage(ExportStage, long, long)} when they finish, emitting one {@link ExportStageEvent} per stage.
+ */
+public class ExportMetrics implements ExportMetricsMBean {
+    public static final String OBJECT_NAME = "com.mindlinksoft.recruitment.mychat:type=ExportMetrics";
+    public static final int PUBLISHED_EXPORTS = 16;
+    private static final AtomicLong EXPORT_IDS = new AtomicLong();
+    private static final Deque<ObjectName> PUBLISHED_NAMES = new ArrayDeque<>();
+
+    public final AtomicLong linesRead = new AtomicLong();
+    public final AtomicLong bytesRead = new AtomicLong();
+    public final AtomicLong bytesWritten = new AtomicLong();
+    public final AtomicLong messagesKept = new AtomicLong();
+    public final AtomicLong messagesDropped = new AtomicLong();
+    public final AtomicLong redactions = new AtomicLong();
+    public final AtomicLong duplicates = new AtomicLong();
+    public final AtomicLong redactionCacheHits = new AtomicLong();
+    public final AtomicLong redactionCacheMisses = new AtomicLong();
+    private final AtomicLongArray stageNanos = new AtomicLongArray(ExportStage.values().length);
+    private long exportId;
+
+    /**
+     * Starts timing the given {@code stage}. The stage ends when the returned timer is closed.
+     *
+     * @param stage The stage being timed.
+     * @return The running timer.
+     */
+    public StageTimer time(ExportStage stage) {
+        return new StageTimer(stage);
+    }
+
+    /**
+     * Adds {@code nanos} spent on {@code items} items to the total of the given {@code stage} and commits one
+     * {@link ExportStageEvent} for them, for stages timed by their caller rather than with {@link #time(ExportStage)}.
+     *
+     * @param stage The stage.
+     * @param nanos The elapsed nanoseconds.
+     * @param items The number of items handled in that time.
+     */
+    public void addStage(ExportStage stage, long nanos, long items) {
+        stageNanos.addAndGet(stage.ordinal(), nanos);
+        ExportStageEvent event = new ExportStageEvent();
+        if (event.shouldCommit()) {
+            event.exportId = exportId();
+            event.stage = stage.name();
+            event.items = items;
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the number of this export among those of the JVM, which tells apart the MBeans and JFR events of
+     * exports. It is assigned when first needed, so metrics replaced before they are used take no number.
+     *
+     * @return The export id.
+     */
+    public synchronized long exportId() {
+        if (exportId == 0) {
+            exportId = EXPORT_IDS.incrementAndGet();
+        }
+        return exportId;
+    }
+
+    /**
+     * @param stage The stage.
+     * @return The total nanoseconds spent in the given {@code stage}.
+     */
+    public long nanos(ExportStage stage) {
+        return stageNanos.get(stage.ordinal());
+    }
+
+    /**
+     * Formats the totals as one human readable line.
+     *
+     * @return The summary line.
+     */
+    public String toSummaryLine() {
+        StringBuilder summary = new StringBuilder();
+        summary.append("Export metrics: lines=").append(linesRead.get())
+                .append(" bytesRead=").append(bytesRead.get())
+                .append(" bytesWritten=").append(bytesWritten.get())
+                .append(" kept=").append(messagesKept.get())
+                .append(" dropped=").append(messagesDropped.get())
+                .append(" redactions=").append(redactions.get())
+                .append(" duplicates=").append(duplicates.get())
+                .append(" cacheHits=").append(redactionCacheHits.get())
+                .append(" cacheMisses=").append(redactionCacheMisses.get());
+        for (ExportStage stage : ExportStage.values()) {
+            summary.append(' ').append(stage.name().toLowerCase()).append("Ms=")
+                    .append(String.format("%.3f", nanos(stage) / 1_000_000.0));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Writes the totals as JSON to the given {@code metricsFilePath}, replacing any previous content.
+     *
+     * @param metricsFilePath The file to write.
+     * @throws IOException Thrown when the file cannot be written.
+     */
+    public void writeJson(String metricsFilePath) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("lines_read", linesRead.get());
+        json.put("bytes_read", bytesRead.get());
+        json.put("bytes_written", bytesWritten.get());
+        json.put("messages_kept", messagesKept.get());
+        json.put("messages_dropped", messagesDropped.get());
+        json.put("redactions", redactions.get());
+        json.put("duplicates", duplicates.get());
+        json.put("redaction_cache_hits", redactionCacheHits.get());
+        json.put("redaction_cache_misses", redactionCacheMisses.get());
+        Map<String, Long> stages = new LinkedHashMap<>();
+        for (ExportStage stage : ExportStage.values()) {
+            stages.put(stage.name().toLowerCase(), nanos(stage));
+        }
+        json.put("stage_nanos", stages);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(metricsFilePath), StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(json, writer);
+        }
+    }
+
+    /**
+     * Publishes these metrics as the platform MBean {@value #OBJECT_NAME} with an {@code id} key of the export id,
+     * and commits an {@link ExportSummaryEvent}. The MBeans of the last {@value #PUBLISHED_EXPORTS} exports stay
+     * registered; older ones are unregistered.
+     */
+    public void publish() {
+        ExportSummaryEvent event = new ExportSummaryEvent();
+        if (event.shouldCommit()) {
+            event.exportId = exportId();
+            event.linesRead = linesRead.get();
+            event.bytesRead = bytesRead.get();
+            event.bytesWritten = bytesWritten.get();
+            event.messagesKept = messagesKept.get();
+            event.messagesDropped = messagesDropped.get();
+            event.redactions = redactions.get();
+            event.duplicates = duplicates.get();
+            event.redactionCacheHits = redactionCacheHits.get();
+            event.redactionCacheMisses = redactionCacheMisses.get();
+            event.commit();
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME + ",id=" + exportId());
+            synchronized (PUBLISHED_NAMES) {
+                if (server.isRegistered(name)) {
+                    return;
+                }
+                server.registerMBean(this, name);
+                PUBLISHED_NAMES.addLast(name);
+                while (PUBLISHED_NAMES.size() > PUBLISHED_EXPORTS) {
+                    ObjectName oldest = PUBLISHED_NAMES.removeFirst();
+                    if (server.isRegistered(oldest)) {
+                        server.unregisterMBean(oldest);
+                    }
+                }
+            }
+        } catch (JMException e) {
+            System.out.println("The export metrics could not be published over JMX: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long getLinesRead() {
+        return linesRead.get();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public long getMessagesKept() {
+        return messagesKept.get();
+    }
+
+    @Override
+    public long getMessagesDropped() {
+        return messagesDropped.get();
+    }
+
+    @Override
+    public long getRedactions() {
+        return redactions.get();
+    }
+
+    @Override
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    @Override
+    public long getRedactionCacheHits() {
+        return redactionCacheHits.get();
+    }
+
+    @Override
+    public long getRedactionCacheMisses() {
+        return redactionCacheMisses.get();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return nanos(ExportStage.PARSE);
+    }
+
+    @Override
+    public long getFilterNanos() {
+        return nanos(ExportStage.FILTER);
+    }
+
+    @Override
+    public long getRedactionNanos() {
+        return nanos(ExportStage.REDACTION);
+    }
+
+    @Override
+    public long getObfuscationNanos() {
+        return nanos(ExportStage.OBFUSCATION);
+    }
+
+    @Override
+    public long getReportNanos() {
+        return nanos(ExportStage.REPORT);
+    }
+
+    @Override
+    public long getSerializationNanos() {
+        return nanos(ExportStage.SERIALIZATION);
+    }
+
+    /**
+     * Times one run of a stage; closing it adds the elapsed time to the stage total and commits the JFR event.
+     */
+    public final class StageTimer implements AutoCloseable {
+        private final ExportStage stage;
+        private final ExportStageEvent event = new ExportStageEvent();
+        private final long start;
+        private long items;
+
+        private StageTimer(ExportStage stage) {
+            this.stage = stage;
+            event.begin();
+            start = System.nanoTime();
+        }
+
+        /**
+         * @param items The number of lines, messages or redactions the stage handled.
+         */
+        public void setItems(long items) {
+            this.items = items;
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - start;
+            stageNanos.addAndGet(stage.ordinal(), nanos);
+            event.end();
+            if (event.shouldCommit()) {
+                event.exportId = exportId();
+                event.stage = stage.name();
+                event.items = items;
+                event.nanos = nanos;
+                event.commit();
+            }
+        }
+    }
+}
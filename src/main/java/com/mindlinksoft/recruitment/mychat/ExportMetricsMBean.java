@@ -0,0 +1,37 @@
+package com.mindlinksoft.recruitment.mychat;
+
+/**
+ * JMX view of the {@link ExportMetrics} of one export, registered with an {@code id} key of its export id.
+ */
+public interface ExportMetricsMBean {
+
+    long getLinesRead();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    long getMessagesKept();
+
+    long getMessagesDropped();
+
+    long getRedactions();
+
+    long getDuplicates();
+
+    long getRedactionCacheHits();
+
+    long getRedactionCacheMisses();
+
+    long getParseNanos();
+
+    long getFilterNanos();
+
+    long getRedactionNanos();
+
+    long getObfuscationNanos();
+
+    long getReportNanos();
+
+    long getSerializationNanos();
+}
@@ -0,0 +1,248 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Represents the optional settings of an export, given on the command line as {@code name=value} pairs after the
+ * four required arguments.
+ */
+public final class ExportOptions implements Cloneable {
+    public static final String METRICS_FILE = "metrics_file";
+    public static final String SNAPSHOT = "snapshot";
+    public static final String PARTITION_DIR = "partition_dir";
+    public static final String MAX_OPEN_FILES = "max_open_files";
+    public static final String PARALLELISM = "parallelism";
+    public static final String REDACTION_BATCH_SIZE = "redaction_batch_size";
+    public static final String MERGE = "merge";
+    public static final String ACTIVITY_WINDOW = "activity_window";
+    public static final String WINDOW_HISTORY = "window_history";
+    public static final String PIPELINE = "pipeline";
+    public static final String PIPELINE_BATCH_SIZE = "pipeline_batch_size";
+    public static final String PIPELINE_BUFFER = "pipeline_buffer";
+    public static final String PSEUDONYM_STORE = "pseudonym_store";
+    public static final String PSEUDONYM_CAPACITY = "pseudonym_capacity";
+    public static final String DEDUPLICATE = "dedup";
+    public static final String DEDUP_WINDOW = "dedup_window";
+    public static final String DEDUP_CAPACITY = "dedup_capacity";
+    public static final String SAMPLE = "sample";
+    public static final String SAMPLE_SEED = "sample_seed";
+    public static final String STATS = "stats";
+    public static final String TRACKED_USERS = "tracked_users";
+    public static final String SORT = "sort";
+    public static final String SORT_BUFFER = "sort_buffer";
+    public static final String FORMAT = "format";
+    public static final String SERIALIZATION_THREADS = "serialization_threads";
+    public static final String SERIALIZATION_CHUNK_SIZE = "serialization_chunk_size";
+    public static final String TRENDING_TERMS = "trending_terms";
+    public static final String STOP_WORDS = "stop_words";
+    public static final String JSON_INPUT = "json_input";
+    public static final String REDACTION_CACHE = "redaction_cache";
+    public static final String OFFSET = "offset";
+    public static final String LIMIT = "limit";
+    public static final String NEWEST = "newest";
+
+    /**
+     * The file the export metrics are written to as JSON, or {@code null} to only print the summary line.
+     */
+    public String metricsFilePath;
+
+    /**
+     * Whether the parsed conversation is cached in a {@link ConversationSnapshot} next to the input file and loaded
+     * from there on later exports.
+     */
+    public boolean useSnapshot;
+
+    /**
+     * The directory a partitioned export writes its files to.
+     */
+    public String partitionDirectory = "partitions";
+
+    /**
+     * The maximum number of files a partitioned export keeps open at once.
+     */
+    public int maxOpenFiles = 64;
+
+    /**
+     * The number of threads redaction runs on, or 0 to use the common fork/join pool.
+     */
+    public int parallelism;
+
+    /**
+     * The largest number of messages one redaction task handles without splitting further.
+     */
+    public int redactionBatchSize = ParallelRedactor.DEFAULT_BATCH_SIZE;
+
+    /**
+     * The conversation files merged by timestamp into one export, or {@code null} to export only the input file.
+     */
+    public List<String> mergeInputFilePaths;
+
+    /**
+     * The length of the windows of the windowed activity report, or {@code null} for no windowed report.
+     */
+    public WindowedActivityReport.Window activityWindow;
+
+    /**
+     * The number of most recent windows kept in the windowed activity report.
+     */
+    public int windowHistory = WindowedActivityReport.DEFAULT_HISTORY;
+
+    /**
+     * Whether reading, redaction and writing run as concurrent stages of a {@link PipelinedExport}.
+     */
+    public boolean pipeline;
+
+    /**
+     * The number of messages passed between pipeline stages at once.
+     */
+    public int pipelineBatchSize = PipelinedExport.DEFAULT_BATCH_SIZE;
+
+    /**
+     * The number of batches a pipeline stage can have waiting before the stage feeding it blocks.
+     */
+    public int pipelineBufferSize = PipelinedExport.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * The {@link PseudonymStore} obfuscated user ids are taken from, or {@code null} to derive them from the username.
+     */
+    public String pseudonymStorePath;
+
+    /**
+     * The number of slots of a newly created pseudonym store.
+     */
+    public int pseudonymCapacity = PseudonymStore.DEFAULT_CAPACITY;
+
+    /**
+     * Whether messages repeating the timestamp, sender and text of an earlier one are dropped by a
+     * {@link DuplicateFilter}.
+     */
+    public boolean deduplicate;
+
+    /**
+     * How many seconds behind the latest timestamp the duplicate filter still remembers a message.
+     */
+    public long dedupWindowSeconds = DuplicateFilter.DEFAULT_WINDOW_SECONDS;
+
+    /**
+     * The maximum number of messages the duplicate filter remembers at once.
+     */
+    public int dedupCapacity = DuplicateFilter.DEFAULT_CAPACITY;
+
+    /**
+     * The number of kept messages randomly sampled into the output, or 0 to write every kept message.
+     */
+    public int sampleSize;
+
+    /**
+     * The seed of the random choices of the sample.
+     */
+    public long sampleSeed = ReservoirSample.DEFAULT_SEED;
+
+    /**
+     * Whether only the {@link ConversationStatistics} of the kept messages are written, instead of the messages.
+     */
+    public boolean statistics;
+
+    /**
+     * The number of users whose message counts the statistics track to find the most active users.
+     */
+    public int trackedUsers = ConversationStatistics.DEFAULT_TRACKED_USERS;
+
+    /**
+     * The order the messages are sorted into before they are exported, or {@code null} to keep the input order.
+     */
+    public SortOrder sortOrder;
+
+    /**
+     * The number of messages sorted in memory before a sorted run is spilled to a temporary file.
+     */
+    public int sortBufferSize = SortingMessageSource.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * The JSON schema the export is written in.
+     */
+    public OutputFormat outputFormat = OutputFormat.STANDARD;
+
+    /**
+     * The number of threads the messages of a conversation read in full are serialized on, or 0 or 1 to serialize
+     * them on the calling thread.
+     */
+    public int serializationThreads;
+
+    /**
+     * The number of messages each serialization thread encodes at once.
+     */
+    public int serializationChunkSize = ParallelJsonSerializer.DEFAULT_CHUNK_SIZE;
+
+    /**
+     * The number of most frequent words listed in the trending terms report, or 0 for no trending terms report.
+     */
+    public int trendingTerms;
+
+    /**
+     * The lower case words left out of the trending terms report.
+     */
+    public Set<String> stopWords = TrendingTermsReport.DEFAULT_STOP_WORDS;
+
+    /**
+     * An earlier JSON export read instead of the input text file, or {@code null} to read the text file.
+     */
+    public String jsonInputFilePath;
+
+    /**
+     * The number of redacted message bodies remembered by the {@link RedactionCache}, so repeated bodies are only
+     * redacted once.
+     */
+    public int redactionCacheSize = RedactionCache.DEFAULT_CAPACITY;
+
+    /**
+     * The number of messages kept by the filter that are skipped before the first one is exported.
+     */
+    public int offset;
+
+    /**
+     * The most messages exported after the offset, or 0 to export them all; reading stops once this many are kept.
+     */
+    public int limit;
+
+    /**
+     * The number of newest messages kept by the filter that are exported, found by reading the input file from its
+     * end, or 0 to read it from the start.
+     */
+    public int newest;
+
+    /**
+     * Whether the export streams messages from input to output instead of reading the whole conversation first.
+     *
+     * @return {@code true} when an option that needs streaming is set.
+     */
+    public boolean isStreaming() {
+        return mergeInputFilePaths != null || activityWindow != null || pipeline || deduplicate || sampleSize > 0 || statistics || sortOrder != null
+                || outputFormat != OutputFormat.STANDARD || trendingTerms > 0
+                || jsonInputFilePath != null || offset > 0 || limit > 0 || newest > 0;
+    }
+
+    /**
+     * Copies these options, so the copy is unaffected by later changes to them.
+     *
+     * @return The copy.
+     */
+    public ExportOptions copy() {
+        try {
+            ExportOptions copy = (ExportOptions) super.clone();
+            if (mergeInputFilePaths != null) {
+                copy.mergeInputFilePaths = Collections.unmodifiableList(new ArrayList<>(mergeInputFilePaths));
+            }
+            if (stopWords != null) {
+                copy.stopWords = Collections.unmodifiableSet(new HashSet<>(stopWords));
+            }
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Predicate;
+
+/**
+ * Represents an export compiled once and run any number of times, concurrently, against conversations given as
+ * streams, for embedding the exporter in another application.
+ * <p>
+ * A plan is immutable: the filter, the compiled blacklist and a copy of the options are fixed when it is compiled.
+ * Each run gets its own {@link ConversationExporter}, copy of the options, {@link StreamingExport} and
+ * {@link ExportMetrics}, so runs share no mutable state, and nothing is read from or written to the exporter's
+ * default file paths. Runs always stream; the options that only apply to files, such as {@code merge},
+ * {@code snapshot} and {@code serialization_threads}, are ignored.
+ */
+public final class ExportPlan {
+    private final Predicate<Message> filter;
+    private final Blacklist blacklist;
+    private final boolean hideCardAndPhoneNumbers;
+    private final boolean obfuscateUserIds;
+    private final ExportOptions options;
+
+    private ExportPlan(Predicate<Message> filter, Blacklist blacklist, boolean hideCardAndPhoneNumbers,
+                       boolean obfuscateUserIds, ExportOptions options) {
+        this.filter = filter;
+        this.blacklist = blacklist;
+        this.hideCardAndPhoneNumbers = hideCardAndPhoneNumbers;
+        this.obfuscateUserIds = obfuscateUserIds;
+        this.options = options;
+    }
+
+    /**
+     * Compiles a plan from the same arguments as the command line: the filter, the string to filter by, whether to
+     * hide card and phone numbers, whether to obfuscate user ids, and any optional {@code name=value} arguments.
+     *
+     * @param args The arguments.
+     * @return The plan.
+     */
+    public static ExportPlan compile(String... args) {
+        if (args.length < 4) {
+            throw new IllegalArgumentException("An export plan needs the filter, the string to filter by and the two yes/no arguments.");
+        }
+        ExportOptions options = new CommandLineArgumentParser().parseOptions(args, 4);
+        return compile(args[0], args[1].split(","), args[2].equals("yes"), args[3].equals("yes"), options);
+    }
+
+    /**
+     * Compiles a plan.
+     *
+     * @param filterType              One of 'username', 'specific_word', 'hide_word' or 'no_filter'.
+     * @param stringToFilterBy        The username, the word, or the words to hide; ignored by 'no_filter'.
+     * @param hideCardAndPhoneNumbers Whether card and phone numbers are hidden.
+     * @param obfuscateUserIds        Whether user ids are obfuscated.
+     * @param options                 The optional settings; they are copied, so later changes do not affect the plan.
+     * @return The plan.
+     */
+    public static ExportPlan compile(String filterType, String[] stringToFilterBy, boolean hideCardAndPhoneNumbers,
+                                     boolean obfuscateUserIds, ExportOptions options) {
+        Predicate<Message> filter = message -> true;
+        Blacklist blacklist = null;
+        switch (filterType) {
+            case ("username"):
+                String username = stringToFilterBy[0];
+                filter = message -> message.username.equals(username);
+                break;
+            case ("specific_word"):
+                String specificWord = stringToFilterBy[0];
+                filter = message -> message.message.contains(specificWord);
+                break;
+            case ("hide_word"):
+                blacklist = new Blacklist(stringToFilterBy.clone());
+                break;
+            case ("no_filter"):
+                break;
+            default:
+                throw new IllegalArgumentException("The filter '" + filterType + "' cannot be used in an export plan.");
+        }
+        return new ExportPlan(filter, blacklist, hideCardAndPhoneNumbers, obfuscateUserIds, options.copy());
+    }
+
+    /**
+     * Runs the plan on the conversation text read from {@code inputStream}, writing the JSON to {@code outputStream}.
+     *
+     * A stream can only be read from its start, so plans using the {@code newest} option must be run on a
+     * {@link ReverseChatReader} instead.
+     *
+     * @param inputStream  The conversation, in the same text format as the input file; it is closed by the run.
+     * @param outputStream The stream the JSON is written to; it is closed by the run.
+     * @return The metrics of this run.
+     * @throws IOException Thrown when the input cannot be read or the output cannot be written.
+     */
+    public ExportMetrics run(InputStream inputStream, OutputStream outputStream) throws IOException {
+        if (options.newest > 0) {
+            inputStream.close();
+            outputStream.close();
+            throw new IllegalArgumentException("A plan using the option 'newest' must be run on a source giving the newest messages first.");
+        }
+        return run(new ChatReader(inputStream), outputStream);
+    }
+
+    /**
+     * Runs the plan on the messages of {@code source}, writing the JSON to {@code outputStream}.
+     *
+     * @param source       The messages to export, newest first when the plan uses the {@code newest} option; they are
+     *                     closed by the run.
+     * @param outputStream The stream the JSON is written to; it is closed by the run.
+     * @return The metrics of this run.
+     * @throws IOException Thrown when the input cannot be read or the output cannot be written.
+     */
+    public ExportMetrics run(MessageSource source, OutputStream outputStream) throws IOException {
+        ConversationExporter exporter = new ConversationExporter();
+        exporter.options = options.copy();
+        if (options.sortOrder != null) {
+            source = new SortingMessageSource(source, options.sortOrder, options.sortBufferSize);
+        }
+        try (MessageSource input = source; OutputStream output = outputStream) {
+            if (options.pseudonymStorePath != null) {
+                exporter.pseudonyms = PseudonymStore.open(options.pseudonymStorePath, options.pseudonymCapacity);
+            }
+            StreamingExport export = StreamingExport.fromOptions(exporter, hideCardAndPhoneNumbers, obfuscateUserIds);
+            export.filter = filter;
+            if (blacklist != null) {
+                export.redaction = message -> exporter.redactBlacklisted(blacklist, message);
+            }
+            if (options.statistics) {
+                export.runStatistics(input, output, new ConversationStatistics(options.trackedUsers));
+            } else if (options.pipeline) {
+                new PipelinedExport(export, options.pipelineBatchSize, options.pipelineBufferSize).run(input, output);
+            } else {
+                export.run(input, output);
+            }
+        } finally {
+            if (exporter.pseudonyms != null) {
+                exporter.pseudonyms.close();
+            }
+        }
+        return exporter.metrics;
+    }
+}
@@ -0,0 +1,8 @@
+package com.mindlinksoft.recruitment.mychat;
+
+/**
+ * The stages an export passes through, used to attribute time and counts in {@link ExportMetrics}.
+ */
+public enum ExportStage {
+    PARSE, FILTER, REDACTION, OBFUSCATION, REPORT, SERIALIZATION;
+}
@@ -0,0 +1,33 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event committed once per {@link ExportStage} run, so a flight recording shows where export time goes. A
+ * streaming export commits one per stage when it finishes, summing the time of every message.
+ */
+@Name("com.mindlinksoft.recruitment.mychat.ExportStage")
+@Label("Export Stage")
+@Category("My Chat")
+@Description("Duration and number of items processed by one stage of a conversation export.")
+public class ExportStageEvent extends jdk.jfr.Event {
+
+    @Label("Export Id")
+    public long exportId;
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Items")
+    @Description("Lines, messages or redactions handled by the stage, depending on the stage.")
+    public long items;
+
+    @Label("Stage Time")
+    @Description("Time spent in the stage; for a streaming export, the sum over every message rather than the event duration.")
+    @Timespan
+    public long nanos;
+}
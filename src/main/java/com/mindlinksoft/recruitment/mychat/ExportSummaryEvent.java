@@ -0,0 +1,49 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event committed at the end of every export with the totals gathered by {@link ExportMetrics}.
+ */
+@Name("com.mindlinksoft.recruitment.mychat.ExportSummary")
+@Label("Export Summary")
+@Category("My Chat")
+@Description("Totals for one conversation export.")
+public class ExportSummaryEvent extends jdk.jfr.Event {
+
+    @Label("Export Id")
+    public long exportId;
+
+    @Label("Lines Read")
+    public long linesRead;
+
+    @Label("Bytes Read")
+    @DataAmount
+    public long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytesWritten;
+
+    @Label("Messages Kept")
+    public long messagesKept;
+
+    @Label("Messages Dropped")
+    public long messagesDropped;
+
+    @Label("Redactions")
+    public long redactions;
+
+    @Label("Duplicates Dropped")
+    public long duplicates;
+
+    @Label("Redaction Cache Hits")
+    public long redactionCacheHits;
+
+    @Label("Redaction Cache Misses")
+    public long redactionCacheMisses;
+}
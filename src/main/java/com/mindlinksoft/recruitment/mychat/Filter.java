@@ -1,6 +1,9 @@
 package com.mindlinksoft.recruitment.mychat;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -9,9 +12,10 @@ import java.util.List;
  */
 public class Filter {
     public FilterMethod filterMethod;
+    private final ConversationExporter c;
 
     public enum FilterMethod {
-        USERNAME, SPECIFIC_WORD, REMOVE_WORDS, NO_FILTER;
+        USERNAME, SPECIFIC_WORD, REMOVE_WORDS, NO_FILTER, PARTITION;
     }
 
     /**
@@ -20,7 +24,19 @@ public class Filter {
      * @param filterMethod Matches to the enum of type FilterMethod
      */
     public Filter(FilterMethod filterMethod) {
+        this(filterMethod, new ConversationExporter());
+    }
+
+    /**
+     * Instantiates the filterMethod type as designated by the user input, reading and writing through the
+     * given {@code exporter}.
+     *
+     * @param filterMethod Matches to the enum of type FilterMethod
+     * @param exporter     The exporter used to read and write the conversation.
+     */
+    public Filter(FilterMethod filterMethod, ConversationExporter exporter) {
         this.filterMethod = filterMethod;
+        this.c = exporter;
     }
 
     /**
@@ -32,9 +48,13 @@ public class Filter {
      * @param obfuscateUserIds
      */
     public void noFilter(Boolean hideCardAndPhoneNumbers, Boolean obfuscateUserIds) throws Exception {
-
-        ConversationExporter conversationExporter = new ConversationExporter();
-        conversationExporter.writeConversation(conversationExporter.readConversation(obfuscateUserIds), hideCardAndPhoneNumbers);
+        if (c.options.isStreaming()) {
+            c.writeStreaming(streamingExport(hideCardAndPhoneNumbers, obfuscateUserIds));
+            return;
+        }
+        Conversation conversation = c.readConversation(obfuscateUserIds);
+        c.metrics.messagesKept.addAndGet(conversation.messages.size());
+        c.writeConversation(conversation, hideCardAndPhoneNumbers);
     }
 
     /**
@@ -48,22 +68,28 @@ public class Filter {
      * @throws Exception
      */
     public void searchUserMessages(String username, Boolean hideCardAndPhoneNumbers, Boolean obfuscateUserIds) throws Exception {
-        ConversationExporter c = new ConversationExporter();
         List<Message> messageList = new ArrayList<>();
         try {
-            c.readConversation(obfuscateUserIds).messages.forEach(s -> {
-                if (s.username.equals(username)) {
-                    StringBuilder str = new StringBuilder();
-                    str.append(s);
-                    Message m = new Message((s.unix_timestamp), s.username, s.message);
-                    messageList.add(m);
-                } else {
-                    //System.out.println("Username not found.");
-                }
-            });
+            if (c.options.isStreaming()) {
+                StreamingExport export = streamingExport(hideCardAndPhoneNumbers, obfuscateUserIds);
+                export.filter = s -> s.username.equals(username);
+                c.writeStreaming(export);
+                return;
+            }
+            Collection<Message> messages = c.readConversation(obfuscateUserIds).messages;
+            try (ExportMetrics.StageTimer timer = c.metrics.time(ExportStage.FILTER)) {
+                messages.forEach(s -> {
+                    if (s.username.equals(username)) {
+                        Message m = new Message((s.unix_timestamp), s.username, s.message);
+                        messageList.add(m);
+                    }
+                });
+                timer.setItems(messages.size());
+            }
+            recordKept(messages.size(), messageList.size());
 
-                Conversation filteredConvo = new Conversation(c.conversation_name, messageList);
-                c.writeConversation(filteredConvo, hideCardAndPhoneNumbers);
+            Conversation filteredConvo = new Conversation(c.conversation_name, messageList);
+            c.writeConversation(filteredConvo, hideCardAndPhoneNumbers);
 
         } catch (Exception e) {
             System.out.println("Conversation not found.");
@@ -76,20 +102,28 @@ public class Filter {
      * to the writeConversation method and presented in json format.  @param specificWord
      */
     public void searchSpecificWord(String specificWord, Boolean hideCardAndPhoneNumbers, Boolean obfuscateUserIds) throws Exception {
-        ConversationExporter c = new ConversationExporter();
         List<Message> messageList = new ArrayList<>();
         try {
-            c.readConversation(obfuscateUserIds).messages.forEach(s -> {
+            if (c.options.isStreaming()) {
+                StreamingExport export = streamingExport(hideCardAndPhoneNumbers, obfuscateUserIds);
+                export.filter = s -> s.message.contains(specificWord);
+                c.writeStreaming(export);
+                return;
+            }
+            Collection<Message> messages = c.readConversation(obfuscateUserIds).messages;
+            try (ExportMetrics.StageTimer timer = c.metrics.time(ExportStage.FILTER)) {
+                messages.forEach(s -> {
+                    if (s.message.contains(specificWord)) {
+                        Message m = new Message((s.unix_timestamp), s.username, s.message);
+                        messageList.add(m);
+                    }
+                });
+                timer.setItems(messages.size());
+            }
+            recordKept(messages.size(), messageList.size());
 
-                if (s.message.contains(specificWord)) {
-                    Message m = new Message((s.unix_timestamp), s.username, s.message);
-                    messageList.add(m);
-                } else {
-                    //System.out.println("Word not found in this sentence.");
-                }
-            });
-                Conversation filteredConvo = new Conversation(c.conversation_name, messageList);
-                c.writeConversation(filteredConvo, hideCardAndPhoneNumbers);
+            Conversation filteredConvo = new Conversation(c.conversation_name, messageList);
+            c.writeConversation(filteredConvo, hideCardAndPhoneNumbers);
 
         } catch (Exception e) {
             System.out.println("Conversation not found.");
@@ -106,27 +140,101 @@ public class Filter {
      * @param obfuscateUserIds
      */
     public void hideSpecificWord(String[] stringToFilterBy, Boolean hideCardAndPhoneNumbers, Boolean obfuscateUserIds) throws Exception {
-        ConversationExporter c = new ConversationExporter();
-        List<Message> messageList = new ArrayList<>();
+        Blacklist blacklist = new Blacklist(stringToFilterBy);
+        List<Message> messageList;
 
         try {
-            for (Message s : c.readConversation(obfuscateUserIds).messages) {
-                for (String wordToCensor : stringToFilterBy) {
+            if (c.options.isStreaming()) {
+                StreamingExport export = streamingExport(hideCardAndPhoneNumbers, obfuscateUserIds);
+                export.redaction = message -> c.redactBlacklisted(blacklist, message);
+                c.writeStreaming(export);
+                return;
+            }
+            Collection<Message> messages = c.readConversation(obfuscateUserIds).messages;
+            try (ExportMetrics.StageTimer timer = c.metrics.time(ExportStage.REDACTION)) {
+                messageList = c.redactInParallel(messages, message -> c.redactBlacklisted(blacklist, message));
+                timer.setItems(messageList.size());
+            }
+            recordKept(messages.size(), messageList.size());
 
-                    if (s.message.toLowerCase().contains(wordToCensor.toLowerCase())) {
-                        s.message = s.message.replaceAll(wordToCensor, "*redacted*");
-                    }
+            Conversation filteredConvo = new Conversation(c.conversation_name, messageList);
+            c.writeConversation(filteredConvo, hideCardAndPhoneNumbers);
+
+        } catch (Exception e) {
+            System.out.println("Conversation not found.");
+        }
+    }
+
+    /**
+     * Method which splits the conversation into one JSON file per sender or per day, in a single pass over
+     * the input. Each file holds the messages of its partition and its own user activity report.
+     *
+     * @param partitionBy             Either 'user' or 'day'.
+     * @param hideCardAndPhoneNumbers
+     * @param obfuscateUserIds
+     * @throws Exception
+     */
+    public void partition(String partitionBy, Boolean hideCardAndPhoneNumbers, Boolean obfuscateUserIds) throws Exception {
+        PartitionedExport.PartitionBy by;
+        try {
+            by = PartitionedExport.PartitionBy.valueOf(partitionBy.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Conversations can be partitioned by 'user' or 'day', but not by '" + partitionBy + "'.");
+        }
+        try (MessageSource reader = c.openSource();
+             PartitionedExport export = new PartitionedExport(c.options.partitionDirectory, by, reader.conversationName(),
+                     c.options.maxOpenFiles, Runtime.getRuntime().availableProcessors(),
+                     hideCardAndPhoneNumbers ? c::redactCardAndPhoneNumbers : null)) {
+            long messages = 0;
+            try (ExportMetrics.StageTimer timer = c.metrics.time(ExportStage.PARSE)) {
+                Message m;
+                while ((m = reader.next()) != null) {
+                    messages++;
+                    String username = obfuscateUserIds ? c.obfuscateUserIds(m.username) : m.username;
+                    export.add(new Message(m.unix_timestamp, username, m.message));
                 }
-                Message m = new Message((s.unix_timestamp), s.username, s.message);
-                messageList.add(m);
+                c.metrics.linesRead.addAndGet(reader.linesRead());
+                c.metrics.messagesKept.addAndGet(messages);
+                timer.setItems(messages);
             }
-                Conversation filteredConvo = new Conversation(c.conversation_name, messageList);
-                c.writeConversation(filteredConvo, hideCardAndPhoneNumbers);
-
+            List<Path> files;
+            try (ExportMetrics.StageTimer timer = c.metrics.time(ExportStage.SERIALIZATION)) {
+                files = export.finish();
+                timer.setItems(files.size());
+            }
+            if (hideCardAndPhoneNumbers) {
+                c.metrics.addStage(ExportStage.REDACTION, export.redactionNanos(), messages);
+            }
+            for (Path file : files) {
+                c.metrics.bytesWritten.addAndGet(Files.size(file));
+            }
+            System.out.println("Conversation partitioned into " + files.size() + " files in '" + c.options.partitionDirectory + "'.");
         } catch (Exception e) {
             System.out.println("Conversation not found.");
         }
     }
 
+    /**
+     * Creates a streaming export of the conversation with the given card/phone hiding and obfuscation settings.
+     *
+     * @param hideCardAndPhoneNumbers
+     * @param obfuscateUserIds
+     * @return The streaming export, keeping every message until a filter is set.
+     */
+    private StreamingExport streamingExport(Boolean hideCardAndPhoneNumbers, Boolean obfuscateUserIds) {
+        return StreamingExport.fromOptions(c, hideCardAndPhoneNumbers, obfuscateUserIds);
+    }
+
+    /**
+     * Records how many of the {@code read} messages the filter kept and dropped.
+     *
+     * @param read The number of messages read.
+     * @param kept The number of messages kept.
+     */
+    private void recordKept(int read, int kept) {
+        c.metrics.messagesKept.addAndGet(kept);
+        c.metrics.messagesDropped.addAndGet(read - kept);
+    }
+
 
 }
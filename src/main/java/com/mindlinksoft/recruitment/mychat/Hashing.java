@@ -0,0 +1,54 @@
+package com.mindlinksoft.recruitment.mychat;
+
+/**
+ * The 64-bit hash shared by the sketches, filters and tables of the exporter: FNV-1a over the characters or bytes,
+ * followed by the MurmurHash3 finalizer, so that every bit of the hash depends on every input bit.
+ */
+final class Hashing {
+    static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    static final long FNV_PRIME = 0x100000001B3L;
+
+    private Hashing() {
+    }
+
+    /**
+     * Hashes the characters of the given {@code value}.
+     */
+    static long hash(CharSequence value) {
+        return mix(fnv1a(FNV_OFFSET_BASIS, value));
+    }
+
+    /**
+     * Hashes the given {@code bytes}.
+     */
+    static long hash(byte[] bytes) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Continues an FNV-1a hash from {@code hash} over the characters of the given {@code value}, for hashing several
+     * fields in turn before a single {@link #mix}.
+     */
+    static long fnv1a(long hash, CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Avalanches the bits of an FNV-1a hash with the MurmurHash3 finalizer.
+     */
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
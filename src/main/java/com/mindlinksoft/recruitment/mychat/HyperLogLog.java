@@ -0,0 +1,61 @@
+package com.mindlinksoft.recruitment.mychat;
+
+/**
+ * Represents an approximate count of distinct strings using HyperLogLog, in a fixed {@code 2^precision} bytes no
+ * matter how many strings are added. The standard error of the estimate is about {@code 1.04 / sqrt(2^precision)},
+ * under 1% at the default precision.
+ */
+public class HyperLogLog {
+    public static final int DEFAULT_PRECISION = 14;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Initializes a new, empty count.
+     *
+     * @param precision The number of hash bits choosing a register, between 4 and 18.
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("The HyperLogLog precision must be between 4 and 18, but was " + precision + ".");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds the given {@code value} to the count.
+     *
+     * @param value The value.
+     */
+    public void add(String value) {
+        long hash = Hashing.hash(value);
+        int register = (int) (hash >>> (Long.SIZE - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[register]) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    /**
+     * @return The estimated number of distinct values added.
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+}
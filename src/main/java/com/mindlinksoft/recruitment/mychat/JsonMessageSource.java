@@ -0,0 +1,151 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Represents a reader that streams the messages of a previously exported JSON {@link Conversation} one at a time
+ * with a {@link JsonReader}, so an old export can be filtered and redacted again without its original text and
+ * without ever holding the whole document in memory.
+ * <p>
+ * Only the standard schema can be read. The reports of the old export are skipped; new ones are made from the
+ * messages that are kept.
+ */
+public class JsonMessageSource implements MessageSource {
+    private final JsonReader reader;
+    private String conversationName;
+    private long messagesRead;
+    private boolean inMessages;
+    private boolean finished;
+
+    /**
+     * Opens the export at the given {@code inputFilePath} and reads up to the start of its messages.
+     *
+     * @param inputFilePath The exported JSON file.
+     * @throws IOException Thrown when the file cannot be opened or read.
+     */
+    public JsonMessageSource(String inputFilePath) throws IOException {
+        this(new FileInputStream(inputFilePath));
+    }
+
+    /**
+     * Reads the exported JSON document from {@code inputStream} up to the start of its messages.
+     *
+     * @param inputStream The exported JSON; it is closed with this source.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public JsonMessageSource(InputStream inputStream) throws IOException {
+        reader = new JsonReader(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), 1 << 16));
+        try {
+            reader.beginObject();
+            advanceToMessages();
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The name of the conversation, or {@code null} when the document has none before its messages.
+     */
+    @Override
+    public String conversationName() {
+        return conversationName;
+    }
+
+    @Override
+    public Message next() throws IOException {
+        if (!inMessages) {
+            return null;
+        }
+        try {
+            if (!reader.hasNext()) {
+                reader.endArray();
+                inMessages = false;
+                advanceToMessages();
+                return null;
+            }
+            Message message = readMessage();
+            messagesRead++;
+            return message;
+        } catch (IllegalStateException e) {
+            throw new JsonParseException("Message " + (messagesRead + 1) + " of the export is not a message object.", e);
+        }
+    }
+
+    /**
+     * @return The number of messages read so far, plus one for the conversation name, as for a text file.
+     */
+    @Override
+    public long linesRead() {
+        return messagesRead + 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads the fields before the messages array, keeping the conversation name and skipping anything else, and
+     * opens the array. When the document has no further messages array, reads to its end.
+     */
+    private void advanceToMessages() throws IOException {
+        if (finished) {
+            return;
+        }
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("conversation_name") && reader.peek() == JsonToken.STRING) {
+                conversationName = reader.nextString();
+            } else if (name.equals("messages") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    throw new JsonParseException("The export uses the compact schema, whose messages cannot be read before its user dictionary.");
+                }
+                inMessages = true;
+                return;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        finished = true;
+    }
+
+    private Message readMessage() throws IOException {
+        Instant timestamp = null;
+        String username = null;
+        String body = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "unix_timestamp":
+                    timestamp = Instant.ofEpochSecond(reader.nextLong());
+                    break;
+                case "username":
+                    username = reader.nextString();
+                    break;
+                case "message":
+                    body = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (timestamp == null || username == null || body == null) {
+            throw new JsonParseException("Message " + (messagesRead + 1) + " of the export is missing its unix_timestamp, username or message.");
+        }
+        return new Message(timestamp, username, body);
+    }
+}
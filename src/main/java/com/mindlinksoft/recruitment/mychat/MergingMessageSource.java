@@ -0,0 +1,127 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Represents the messages of several conversation files, such as rotated logs, merged into one stream ordered by
+ * timestamp, or by any other order the sources share. Only the next message of each file is held in memory;
+ * messages that compare equal keep the order of the files they came from.
+ */
+public class MergingMessageSource implements MessageSource {
+    private final List<MessageSource> sources = new ArrayList<>();
+    private final PriorityQueue<Head> heads;
+
+    /**
+     * Merges the given {@code sources}, each of which must already be ordered by timestamp.
+     *
+     * @param sources The sources to merge; they are closed with this source.
+     * @throws IOException Thrown when a source cannot be read.
+     */
+    public MergingMessageSource(List<? extends MessageSource> sources) throws IOException {
+        this(sources, SortOrder.TIME.comparator);
+    }
+
+    /**
+     * Merges the given {@code sources}, each of which must already be ordered by {@code order}.
+     *
+     * @param sources The sources to merge; they are closed with this source.
+     * @param order   The order of the sources and of the merged stream.
+     * @throws IOException Thrown when a source cannot be read.
+     */
+    public MergingMessageSource(List<? extends MessageSource> sources, Comparator<Message> order) throws IOException {
+        heads = new PriorityQueue<>(Comparator.comparing((Head head) -> head.message, order).thenComparingInt(head -> head.sourceIndex));
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one input is needed to merge.");
+        }
+        this.sources.addAll(sources);
+        for (int i = 0; i < sources.size(); i++) {
+            advance(i);
+        }
+    }
+
+    /**
+     * Opens every file in {@code inputFilePaths} and merges them. The conversation name is taken from the first file.
+     * Files ending in {@code .json} are read as earlier exports with a {@link JsonMessageSource}.
+     *
+     * @param inputFilePaths The conversation text files or JSON exports to merge.
+     * @return The merged source.
+     * @throws IOException Thrown when a file cannot be opened or read.
+     */
+    public static MergingMessageSource open(List<String> inputFilePaths) throws IOException {
+        List<MessageSource> sources = new ArrayList<>();
+        try {
+            for (String inputFilePath : inputFilePaths) {
+                sources.add(inputFilePath.endsWith(".json") ? new JsonMessageSource(inputFilePath) : new ChatReader(inputFilePath));
+            }
+            return new MergingMessageSource(sources);
+        } catch (IOException | RuntimeException e) {
+            for (MessageSource source : sources) {
+                source.close();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public String conversationName() {
+        return sources.get(0).conversationName();
+    }
+
+    @Override
+    public Message next() throws IOException {
+        Head head = heads.poll();
+        if (head == null) {
+            return null;
+        }
+        advance(head.sourceIndex);
+        return head.message;
+    }
+
+    @Override
+    public long linesRead() {
+        long linesRead = 0;
+        for (MessageSource source : sources) {
+            linesRead += source.linesRead();
+        }
+        return linesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (MessageSource source : sources) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void advance(int sourceIndex) throws IOException {
+        Message message = sources.get(sourceIndex).next();
+        if (message != null) {
+            heads.add(new Head(message, sourceIndex));
+        }
+    }
+
+    /**
+     * The next unread message of one source.
+     */
+    private static final class Head {
+        final Message message;
+        final int sourceIndex;
+
+        Head(Message message, int sourceIndex) {
+            this.message = message;
+            this.sourceIndex = sourceIndex;
+        }
+    }
+}
@@ -11,17 +11,17 @@ public final class Message {
     /**
      * The message timestamp.
      */
-    public Instant unix_timestamp;
+    public final Instant unix_timestamp;
 
     /**
      * The message sender.
      */
-    public String username;
+    public final String username;
 
     /**
      * The message content.
      */
-    public String message;
+    public final String message;
 
     /**
      * Initializes a new instance of the {@link Message} class.
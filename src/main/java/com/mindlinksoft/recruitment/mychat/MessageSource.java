@@ -0,0 +1,28 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Represents a stream of the messages of one conversation, read one at a time.
+ */
+public interface MessageSource extends Closeable {
+
+    /**
+     * @return The name of the conversation.
+     */
+    String conversationName();
+
+    /**
+     * Reads the next message.
+     *
+     * @return The next message, or {@code null} when there are no more messages.
+     * @throws IOException Thrown when the underlying input cannot be read.
+     */
+    Message next() throws IOException;
+
+    /**
+     * @return The number of input lines read so far.
+     */
+    long linesRead();
+}
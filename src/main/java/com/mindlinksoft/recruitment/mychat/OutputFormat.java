@@ -0,0 +1,16 @@
+package com.mindlinksoft.recruitment.mychat;
+
+/**
+ * The JSON schemas an export can be written in.
+ */
+public enum OutputFormat {
+    /**
+     * The serialized {@link Conversation}, with every message written in full.
+     */
+    STANDARD,
+
+    /**
+     * The schema of the {@link CompactConversationWriter}, with users in a dictionary and relative timestamps.
+     */
+    COMPACT;
+}
@@ -0,0 +1,124 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Represents a serializer that writes the same JSON as Gson does for a {@link Conversation}, encoding contiguous
+ * chunks of its messages to byte buffers on several threads. The buffers are written to the output in message order
+ * as they complete, between the conversation name and the reports, which are written once on the calling thread.
+ * <p>
+ * At most twice as many chunks as threads are in flight at once, so the encoded output held in memory stays
+ * bounded however many messages the conversation has.
+ */
+public class ParallelJsonSerializer {
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final Gson gson = new GsonBuilder().registerTypeAdapter(Instant.class, new InstantSerializer()).create();
+    private final int threads;
+    private final int chunkSize;
+
+    /**
+     * Initializes a new serializer.
+     *
+     * @param threads   The number of threads messages are encoded on.
+     * @param chunkSize The number of messages each thread encodes at once.
+     */
+    public ParallelJsonSerializer(int threads, int chunkSize) {
+        if (threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("The serializer needs at least one thread and one message per chunk.");
+        }
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Writes the given {@code conversation} as JSON to {@code outputStream}.
+     *
+     * @param conversation The conversation to write.
+     * @param outputStream The stream the JSON is written to; it is left open.
+     * @throws IOException Thrown when the output cannot be written.
+     */
+    public void write(Conversation conversation, OutputStream outputStream) throws IOException {
+        List<Message> messages = new ArrayList<>(conversation.messages);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            StringBuilder header = new StringBuilder("{");
+            if (conversation.conversation_name != null) {
+                header.append("\"conversation_name\":").append(gson.toJson(conversation.conversation_name)).append(',');
+            }
+            header.append("\"messages\":[");
+            outputStream.write(header.toString().getBytes(StandardCharsets.UTF_8));
+
+            Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+            for (int start = 0; start < messages.size(); start += chunkSize) {
+                List<Message> chunk = messages.subList(start, Math.min(start + chunkSize, messages.size()));
+                boolean first = start == 0;
+                inFlight.add(executor.submit(() -> encode(chunk, first)));
+                if (inFlight.size() >= threads * 2) {
+                    outputStream.write(inFlight.poll().get());
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                outputStream.write(inFlight.poll().get());
+            }
+
+            StringBuilder trailer = new StringBuilder("]");
+            if (conversation.user_activity_report != null) {
+                trailer.append(",\"user_activity_report\":").append(gson.toJson(conversation.user_activity_report));
+            }
+            if (conversation.activity_windows != null) {
+                trailer.append(",\"activity_windows\":").append(gson.toJson(conversation.activity_windows));
+            }
+            if (conversation.trending_terms != null) {
+                trailer.append(",\"trending_terms\":").append(gson.toJson(conversation.trending_terms));
+            }
+            trailer.append('}');
+            outputStream.write(trailer.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The serialization was interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("A chunk of messages could not be serialized.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Encodes the given {@code chunk} of messages as UTF-8 JSON, each preceded by a comma unless it is the very
+     * first message of the conversation.
+     */
+    private byte[] encode(List<Message> chunk, boolean first) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(chunk.size() * 96);
+        try (Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8)) {
+            for (Message message : chunk) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                gson.toJson(message, Message.class, writer);
+            }
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,81 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Represents a redaction stage that applies a redaction to message bodies in parallel batches on a fork/join pool.
+ * The input messages are never modified: each result is a new {@link Message} stored at the index of its original,
+ * so the output keeps the input order.
+ */
+public class ParallelRedactor {
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final ForkJoinPool pool;
+    private final int batchSize;
+
+    /**
+     * Initializes a redactor running on the given {@code pool}.
+     *
+     * @param pool      The pool the batches run on.
+     * @param batchSize The largest number of messages redacted by one task without splitting further.
+     */
+    public ParallelRedactor(ForkJoinPool pool, int batchSize) {
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Redacts the body of every message in {@code messages}.
+     *
+     * @param messages  The messages to redact.
+     * @param redaction The redaction applied to each message body; it must be safe to call from several threads.
+     * @return New messages with redacted bodies, in the order of {@code messages}.
+     */
+    public List<Message> redact(Collection<Message> messages, UnaryOperator<String> redaction) {
+        Message[] originals = messages.toArray(new Message[0]);
+        Message[] results = new Message[originals.length];
+        pool.invoke(new RedactionTask(originals, results, redaction, 0, originals.length));
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * Redacts the messages in {@code [from, to)}, splitting in half until a range fits in one batch.
+     */
+    private final class RedactionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Message[] originals;
+        private final Message[] results;
+        private final UnaryOperator<String> redaction;
+        private final int from;
+        private final int to;
+
+        RedactionTask(Message[] originals, Message[] results, UnaryOperator<String> redaction, int from, int to) {
+            this.originals = originals;
+            this.results = results;
+            this.redaction = redaction;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= batchSize) {
+                for (int i = from; i < to; i++) {
+                    Message original = originals[i];
+                    results[i] = new Message(original.unix_timestamp, original.username, redaction.apply(original.message));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RedactionTask(originals, results, redaction, from, middle),
+                    new RedactionTask(originals, results, redaction, middle, to));
+        }
+    }
+}
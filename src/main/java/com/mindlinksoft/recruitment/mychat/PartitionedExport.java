@@ -0,0 +1,391 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+
+/**
+ * Represents an export that splits one conversation into one JSON file per partition, either per sender or per
+ * day, in a single pass over the input.
+ * <p>
+ * The calling thread only routes messages: it collects them in a batch per partition and hands full batches to
+ * the queue of the worker thread that owns the partition. Each worker redacts, serializes and writes the messages
+ * of its own partitions straight into their final files, so no partition is ever written by two threads. A worker
+ * keeps at most its share of {@code maxOpenFiles} files open; the least recently used one is closed and reopened
+ * for append when needed again. When the input is exhausted every worker closes its partitions with their own
+ * activity reports.
+ * <p>
+ * A partition file is named after its key, with characters other than letters, digits, '.', '_' and '-' replaced
+ * by '_'. When that name was changed, or is already taken ignoring case, as by "bob!" and "bob?" or "Bob" and "bob"
+ * on a case-insensitive file system, a hash of the key and if needed a counter are appended to keep it unique.
+ */
+public class PartitionedExport implements Closeable {
+    /**
+     * The number of messages routed to a partition before they are handed to its worker.
+     */
+    public static final int BATCH_SIZE = 256;
+
+    /**
+     * The number of routed messages held back over all partitions before every pending batch is handed over.
+     */
+    private static final int MAX_PENDING_MESSAGES = 1 << 16;
+
+    /**
+     * The number of batches a worker queue holds before routing waits for the worker.
+     */
+    private static final int QUEUE_CAPACITY = 64;
+
+    public enum PartitionBy {
+        USER, DAY;
+    }
+
+    private final Path directory;
+    private final PartitionBy partitionBy;
+    private final String conversationName;
+    private final UnaryOperator<String> redaction;
+    private final Gson gson;
+    private final Map<String, Partition> partitions = new LinkedHashMap<>();
+    private final Set<String> fileNames = new HashSet<>();
+    private final Worker[] workers;
+    private final List<Future<Void>> running = new ArrayList<>();
+    private final ExecutorService executor;
+    private int pendingMessages;
+
+    /**
+     * Initializes a new partitioned export writing into the given {@code directory} and starts its workers.
+     *
+     * @param directory        The directory the partition files are written to; created when missing.
+     * @param partitionBy      How messages are assigned to partitions.
+     * @param conversationName The name of the conversation, written into every partition.
+     * @param maxOpenFiles     The maximum number of partition files open at once, over all workers.
+     * @param threads          The number of worker threads; at most {@code maxOpenFiles} are started.
+     * @param redaction        The redaction applied to every message body by the workers, or null for none.
+     * @throws IOException Thrown when the directory cannot be created.
+     */
+    public PartitionedExport(String directory, PartitionBy partitionBy, String conversationName, int maxOpenFiles,
+                             int threads, UnaryOperator<String> redaction) throws IOException {
+        if (maxOpenFiles < 1) {
+            throw new IllegalArgumentException("At least one open file is needed for a partitioned export, but " + maxOpenFiles + " were allowed.");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed for a partitioned export, but " + threads + " were requested.");
+        }
+        this.directory = Files.createDirectories(Paths.get(directory));
+        this.partitionBy = partitionBy;
+        this.conversationName = conversationName;
+        this.redaction = redaction;
+        this.gson = new GsonBuilder().registerTypeAdapter(Instant.class, new InstantSerializer()).create();
+
+        int workerCount = Math.min(threads, maxOpenFiles);
+        this.workers = new Worker[workerCount];
+        this.executor = Executors.newFixedThreadPool(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(maxOpenFiles / workerCount);
+            running.add(executor.submit(workers[i]));
+        }
+    }
+
+    /**
+     * Routes the given {@code message} to its partition.
+     *
+     * @param message The message to write.
+     * @throws IOException Thrown when a worker failed to write a partition file or routing was interrupted.
+     */
+    public void add(Message message) throws IOException {
+        String key = partitionKey(message);
+        Partition partition = partitions.get(key);
+        if (partition == null) {
+            partition = new Partition(key, workers[partitions.size() % workers.length]);
+            partitions.put(key, partition);
+        }
+        partition.pending.add(message);
+        pendingMessages++;
+        if (partition.pending.size() >= BATCH_SIZE) {
+            handOver(partition);
+        }
+        if (pendingMessages >= MAX_PENDING_MESSAGES) {
+            handOverAll();
+        }
+    }
+
+    /**
+     * Hands the remaining messages to the workers and waits until every partition file is complete.
+     *
+     * @return The completed partition files.
+     * @throws IOException Thrown when a partition file cannot be written.
+     */
+    public List<Path> finish() throws IOException {
+        handOverAll();
+        try {
+            for (Worker worker : workers) {
+                worker.queue.put(Batch.END);
+            }
+            for (Future<Void> future : running) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("A partition could not be written.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The partitioned export was interrupted.", e);
+        } finally {
+            executor.shutdown();
+        }
+        List<Path> files = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            files.add(partition.file);
+        }
+        return files;
+    }
+
+    /**
+     * Returns the time the workers spent redacting message bodies, in nanoseconds; complete once {@link #finish()}
+     * returned.
+     *
+     * @return The redaction time summed over all workers.
+     */
+    public long redactionNanos() {
+        long nanos = 0;
+        for (Worker worker : workers) {
+            nanos += worker.redactionNanos;
+        }
+        return nanos;
+    }
+
+    /**
+     * Stops the workers, closing their open files; partition files not yet completed are left incomplete.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void handOverAll() throws IOException {
+        for (Partition partition : partitions.values()) {
+            if (!partition.pending.isEmpty()) {
+                handOver(partition);
+            }
+        }
+    }
+
+    private void handOver(Partition partition) throws IOException {
+        Worker worker = partition.worker;
+        if (worker.failure != null) {
+            throw new IOException("A partition could not be written.", worker.failure);
+        }
+        try {
+            worker.queue.put(new Batch(partition, partition.pending));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The partitioned export was interrupted.", e);
+        }
+        pendingMessages -= partition.pending.size();
+        partition.pending = new ArrayList<>();
+    }
+
+    /**
+     * Returns a file name for the partition with the given {@code key} that no other partition uses, ignoring case.
+     */
+    private String uniqueFileName(String key) {
+        String name = key.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (!name.equals(key) || fileNames.contains(name.toLowerCase(Locale.ROOT))) {
+            name = name + "-" + Integer.toHexString(key.hashCode());
+        }
+        String unique = name;
+        for (int i = 2; !fileNames.add(unique.toLowerCase(Locale.ROOT)); i++) {
+            unique = name + "-" + i;
+        }
+        return unique;
+    }
+
+    private String partitionKey(Message message) {
+        switch (partitionBy) {
+            case USER:
+                return message.username;
+            case DAY:
+                return message.unix_timestamp.atZone(ZoneOffset.UTC).toLocalDate().toString();
+            default:
+                throw new IllegalStateException("Unknown partitioning " + partitionBy);
+        }
+    }
+
+    /**
+     * The state kept for one partition. The pending batch belongs to the routing thread; the file contents, the
+     * activity counts and the message count belong to the partition's worker.
+     */
+    private final class Partition {
+        final Path file;
+        final Worker worker;
+        final Map<String, Integer> userActivity = new LinkedHashMap<>();
+        List<Message> pending = new ArrayList<>();
+        int messageCount;
+        boolean started;
+
+        Partition(String key, Worker worker) {
+            this.file = directory.resolve(uniqueFileName(key) + ".json");
+            this.worker = worker;
+        }
+    }
+
+    /**
+     * A batch of routed messages for one partition, or the end of the input.
+     */
+    private static final class Batch {
+        static final Batch END = new Batch(null, null);
+
+        final Partition partition;
+        final List<Message> messages;
+
+        Batch(Partition partition, List<Message> messages) {
+            this.partition = partition;
+            this.messages = messages;
+        }
+    }
+
+    /**
+     * A worker thread writing the partitions assigned to it. After a failure it keeps draining its queue, so
+     * routing never waits on a worker that stopped writing.
+     */
+    private final class Worker implements Callable<Void> {
+        final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final LinkedHashMap<Partition, Writer> openWriters = new LinkedHashMap<>(16, 0.75f, true);
+        final List<Partition> owned = new ArrayList<>();
+        final int maxOpenFiles;
+        volatile Exception failure;
+        volatile long redactionNanos;
+
+        Worker(int maxOpenFiles) {
+            this.maxOpenFiles = Math.max(1, maxOpenFiles);
+        }
+
+        @Override
+        public Void call() throws Exception {
+            try {
+                Batch batch;
+                while ((batch = queue.take()) != Batch.END) {
+                    if (failure == null) {
+                        try {
+                            write(batch.partition, batch.messages);
+                        } catch (IOException | RuntimeException e) {
+                            failure = e;
+                        }
+                    }
+                }
+                if (failure == null) {
+                    for (Partition partition : owned) {
+                        complete(partition);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            } finally {
+                closeAll();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+
+        private void write(Partition partition, List<Message> messages) throws IOException {
+            if (redaction != null) {
+                long start = System.nanoTime();
+                for (int i = 0; i < messages.size(); i++) {
+                    Message m = messages.get(i);
+                    messages.set(i, new Message(m.unix_timestamp, m.username, redaction.apply(m.message)));
+                }
+                redactionNanos += System.nanoTime() - start;
+            }
+            Writer writer = writerFor(partition);
+            for (Message message : messages) {
+                if (partition.messageCount > 0) {
+                    writer.write(',');
+                }
+                gson.toJson(message, Message.class, writer);
+                partition.messageCount++;
+                partition.userActivity.merge(message.username, 1, Integer::sum);
+            }
+        }
+
+        /**
+         * Writes the activity report that closes the JSON file of the given {@code partition}.
+         */
+        private void complete(Partition partition) throws IOException {
+            Writer writer = writerFor(partition);
+            writer.write("],\"user_activity_report\":" + gson.toJson(new Report().makeReport(partition.userActivity)) + "}");
+            openWriters.remove(partition);
+            writer.close();
+        }
+
+        /**
+         * Returns the open writer of the given {@code partition}, closing the least recently used writer when the
+         * worker's open file limit would otherwise be exceeded. A partition's file is truncated and given its
+         * header when first opened, and appended to afterwards.
+         */
+        private Writer writerFor(Partition partition) throws IOException {
+            Writer writer = openWriters.get(partition);
+            if (writer != null) {
+                return writer;
+            }
+            if (openWriters.size() >= maxOpenFiles) {
+                Iterator<Writer> eldest = openWriters.values().iterator();
+                eldest.next().close();
+                eldest.remove();
+            }
+            if (partition.started) {
+                writer = Files.newBufferedWriter(partition.file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            } else {
+                writer = Files.newBufferedWriter(partition.file, StandardCharsets.UTF_8);
+                writer.write("{\"conversation_name\":" + gson.toJson(conversationName) + ",\"messages\":[");
+                partition.started = true;
+                owned.add(partition);
+            }
+            openWriters.put(partition, writer);
+            return writer;
+        }
+
+        private void closeAll() {
+            for (Writer writer : openWriters.values()) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            openWriters.clear();
+        }
+    }
+}
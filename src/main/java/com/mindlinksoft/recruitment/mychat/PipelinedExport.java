@@ -0,0 +1,191 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Represents a {@link StreamingExport} run as three concurrent stages connected by bounded
+ * {@link java.util.concurrent.Flow} queues: the calling thread reads and parses batches of messages, a redaction
+ * stage obfuscates, filters and redacts them, and a writer stage counts and serializes them.
+ * <p>
+ * Each stage buffers at most {@code bufferSize} batches for the next one. When a buffer is full the stage feeding it
+ * blocks, so a slow writer holds back redaction and reading instead of letting batches pile up in memory.
+ */
+public class PipelinedExport {
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final int DEFAULT_BUFFER_SIZE = 16;
+
+    private final StreamingExport export;
+    private final int batchSize;
+    private final int bufferSize;
+
+    /**
+     * Initializes a pipelined run of the given {@code export}.
+     *
+     * @param export     The export whose stages are run.
+     * @param batchSize  The number of messages passed between stages at once.
+     * @param bufferSize The number of batches each stage can have waiting before the stage feeding it blocks.
+     */
+    public PipelinedExport(StreamingExport export, int batchSize, int bufferSize) {
+        this.export = export;
+        this.batchSize = batchSize;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Streams the messages of {@code source} to {@code outputStream} through the pipeline, until the input ends or
+     * the limit of the export is reached.
+     *
+     * @param source       The messages to export.
+     * @param outputStream The stream the JSON document is written to.
+     * @throws IOException Thrown when the input cannot be read or the output cannot be written.
+     */
+    public void run(MessageSource source, OutputStream outputStream) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try (StreamingConversationWriter writer = export.begin(outputStream, source.conversationName())) {
+            SubmissionPublisher<List<Message>> reader = new SubmissionPublisher<>(executor, bufferSize);
+            RedactionStage redaction = new RedactionStage(executor, bufferSize);
+            reader.subscribe(redaction);
+            redaction.subscribe(new WriterStage(writer, source, done));
+            try {
+                List<Message> batch = new ArrayList<>(batchSize);
+                Message message;
+                while (!done.isDone() && !export.isComplete() && (message = export.read(source)) != null) {
+                    batch.add(message);
+                    if (batch.size() == batchSize) {
+                        reader.submit(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    reader.submit(batch);
+                }
+                reader.close();
+            } catch (IOException | RuntimeException e) {
+                reader.closeExceptionally(e);
+            }
+            done.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("The export pipeline failed.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The export pipeline was interrupted.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The stage that obfuscates, filters and redacts each batch and publishes the kept messages to the writer.
+     */
+    private final class RedactionStage extends SubmissionPublisher<List<Message>> implements Flow.Subscriber<List<Message>> {
+        private Flow.Subscription subscription;
+
+        RedactionStage(ExecutorService executor, int bufferSize) {
+            super(executor, bufferSize);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<Message> batch) {
+            List<Message> kept = new ArrayList<>(batch.size());
+            try {
+                for (Message message : batch) {
+                    Message transformed = export.transform(message);
+                    if (transformed != null) {
+                        kept.add(transformed);
+                    }
+                }
+            } catch (RuntimeException e) {
+                subscription.cancel();
+                closeExceptionally(e);
+                return;
+            }
+            if (!kept.isEmpty()) {
+                submit(kept);
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            closeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            close();
+        }
+    }
+
+    /**
+     * The stage that counts and writes each batch, then writes the reports once every batch has arrived.
+     */
+    private final class WriterStage implements Flow.Subscriber<List<Message>> {
+        private final StreamingConversationWriter writer;
+        private final MessageSource source;
+        private final CompletableFuture<Void> done;
+        private Flow.Subscription subscription;
+
+        WriterStage(StreamingConversationWriter writer, MessageSource source, CompletableFuture<Void> done) {
+            this.writer = writer;
+            this.source = source;
+            this.done = done;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<Message> batch) {
+            try {
+                for (Message message : batch) {
+                    export.write(writer, message);
+                }
+            } catch (RuntimeException e) {
+                subscription.cancel();
+                done.completeExceptionally(e);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            try {
+                export.finish(writer, source);
+                done.complete(null);
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Represents a persistent store of randomly assigned pseudonyms, so a user keeps the same obfuscated id across
+ * every export of every conversation that uses the store.
+ * <p>
+ * The store is two files. {@code <path>.index} is a memory-mapped open-addressing hash table of 16-byte slots, each
+ * holding the 64-bit hash of a username and the offset of its record; {@code <path>.data} is an append-only file of
+ * records, each a length-prefixed UTF-8 username followed by its 16 random pseudonym bytes. Lookups read the mapped
+ * table without locking. New users are appended while holding a lock within this JVM and a file lock across
+ * processes; the record is written and forced to disk before its slot, and the slot's offset before its hash, so
+ * a reader never follows a slot to a missing record, even after a crash has lost writes the operating system had
+ * not yet made durable. Only new users pay for that sync. A record never changes once written, so the most recently used pseudonyms are
+ * also kept in a small in-memory cache, sparing repeated users the read of their record.
+ * <p>
+ * The table does not grow: it is created with a fixed number of slots, which must stay above the number of users.
+ */
+public final class PseudonymStore implements Closeable {
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    public static final int MAX_CAPACITY = 1 << 26;
+    private static final int INDEX_MAGIC = 0x4D435032;
+    private static final long DATA_MAGIC = 0x4D4350445441L;
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 16;
+    private static final int COUNT_OFFSET = 16;
+    private static final int PSEUDONYM_BYTES = 16;
+    private static final double MAX_LOAD = 0.9;
+    private static final int CACHE_SIZE = 4096;
+    private static final Map<Path, PseudonymStore> OPEN_STORES = new HashMap<>();
+
+    private final Path path;
+    private final FileChannel indexChannel;
+    private final FileChannel dataChannel;
+    private final MappedByteBuffer index;
+    private final int capacity;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final SecureRandom random = new SecureRandom();
+    private final RecentPseudonyms recent = new RecentPseudonyms();
+    private int references;
+
+    private PseudonymStore(Path path, int capacity) throws IOException {
+        this.path = path;
+        indexChannel = FileChannel.open(Paths.get(path + ".index"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        dataChannel = FileChannel.open(Paths.get(path + ".data"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock = dataChannel.lock();
+        try {
+            if (indexChannel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(0, INDEX_MAGIC).putLong(8, capacity);
+                indexChannel.write(header, 0);
+                indexChannel.write(ByteBuffer.allocate(1), HEADER_BYTES + (long) capacity * SLOT_BYTES - 1);
+                dataChannel.write(ByteBuffer.allocate(Long.BYTES).putLong(DATA_MAGIC).flip(), 0);
+            }
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+        } finally {
+            lock.release();
+        }
+        if (index.getInt(0) != INDEX_MAGIC) {
+            throw new IllegalArgumentException("'" + path + ".index' is not a pseudonym store.");
+        }
+        this.capacity = (int) index.getLong(8);
+    }
+
+    /**
+     * Opens the store at the given {@code path}, creating it with {@code capacity} slots when it does not exist yet.
+     * Every caller in this JVM opening the same path shares one instance, which stays open until each of them has
+     * closed it.
+     *
+     * @param path     The path of the store, without the {@code .index} and {@code .data} suffixes.
+     * @param capacity The number of slots of a new store, a power of two; ignored when the store exists.
+     * @return The open store.
+     * @throws IOException Thrown when the store cannot be opened or created.
+     */
+    public static PseudonymStore open(String path, int capacity) throws IOException {
+        if (Integer.bitCount(capacity) != 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("The pseudonym store capacity must be a power of two no larger than " + MAX_CAPACITY + ", but was " + capacity + ".");
+        }
+        Path key = Paths.get(path).toAbsolutePath().normalize();
+        synchronized (OPEN_STORES) {
+            PseudonymStore store = OPEN_STORES.get(key);
+            if (store == null) {
+                store = new PseudonymStore(key, capacity);
+                OPEN_STORES.put(key, store);
+            }
+            store.references++;
+            return store;
+        }
+    }
+
+    /**
+     * Returns the pseudonym of the given {@code username}, assigning a new random one the first time the username is
+     * seen by any export using this store.
+     *
+     * @param username The username.
+     * @return The pseudonym, formatted as a UUID.
+     * @throws IOException Thrown when the store cannot be read or written.
+     */
+    public String pseudonym(String username) throws IOException {
+        synchronized (recent) {
+            String cached = recent.get(username);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xFFFF) {
+            throw new IllegalArgumentException("Usernames longer than 65535 bytes cannot be given pseudonyms.");
+        }
+        long hash = Hashing.hash(name);
+        if (hash == 0) { // zero marks an empty slot
+            hash = 1;
+        }
+        byte[] pseudonym = find(name, hash);
+        if (pseudonym == null) {
+            appendLock.lock();
+            try {
+                FileLock lock = dataChannel.lock();
+                try {
+                    pseudonym = find(name, hash);
+                    if (pseudonym == null) {
+                        pseudonym = append(name, hash);
+                    }
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                appendLock.unlock();
+            }
+        }
+        String formatted = format(pseudonym);
+        synchronized (recent) {
+            recent.put(username, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * @return The number of users in the store.
+     */
+    public long size() {
+        return index.getLong(COUNT_OFFSET);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (OPEN_STORES) {
+            if (--references > 0) {
+                return;
+            }
+            OPEN_STORES.remove(path);
+        }
+        dataChannel.force(false);
+        index.force();
+        indexChannel.close();
+        dataChannel.close();
+    }
+
+    /**
+     * Probes the table for the given username.
+     *
+     * @return The pseudonym bytes, or {@code null} when the username has no complete slot yet.
+     */
+    private byte[] find(byte[] name, long hash) throws IOException {
+        for (int slot = firstSlot(hash), probes = 0; probes < capacity; slot = (slot + 1) & (capacity - 1), probes++) {
+            long position = HEADER_BYTES + (long) slot * SLOT_BYTES;
+            long slotHash = index.getLong((int) position);
+            if (slotHash == 0) {
+                return null;
+            }
+            if (slotHash == hash) {
+                long offset = index.getLong((int) position + Long.BYTES);
+                byte[] pseudonym = readRecord(offset, name);
+                if (pseudonym != null) {
+                    return pseudonym;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Appends a record with a new random pseudonym and publishes it in the first free slot.
+     */
+    private byte[] append(byte[] name, long hash) throws IOException {
+        long count = index.getLong(COUNT_OFFSET);
+        if (count + 1 > capacity * MAX_LOAD) {
+            throw new IllegalStateException("The pseudonym store '" + path + "' is full; create a new store with a larger capacity.");
+        }
+        byte[] pseudonym = new byte[PSEUDONYM_BYTES];
+        random.nextBytes(pseudonym);
+        ByteBuffer record = ByteBuffer.allocate(Short.BYTES + name.length + PSEUDONYM_BYTES);
+        record.putShort((short) name.length).put(name).put(pseudonym).flip();
+        long offset = dataChannel.size();
+        while (record.hasRemaining()) {
+            dataChannel.write(record, offset + record.position());
+        }
+        dataChannel.force(false);
+
+        int slot = firstSlot(hash);
+        while (index.getLong(HEADER_BYTES + slot * SLOT_BYTES) != 0) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+        int position = HEADER_BYTES + slot * SLOT_BYTES;
+        index.putLong(position + Long.BYTES, offset);
+        index.putLong(position, hash);
+        index.putLong(COUNT_OFFSET, count + 1);
+        return pseudonym;
+    }
+
+    /**
+     * Reads the record at {@code offset}.
+     *
+     * @return Its pseudonym bytes when the record is for {@code name}, otherwise {@code null}.
+     */
+    private byte[] readRecord(long offset, byte[] name) throws IOException {
+        if (offset == 0) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(Short.BYTES + name.length + PSEUDONYM_BYTES);
+        while (record.hasRemaining()) {
+            if (dataChannel.read(record, offset + record.position()) < 0) {
+                return null;
+            }
+        }
+        record.flip();
+        if ((record.getShort() & 0xFFFF) != name.length) {
+            return null;
+        }
+        byte[] storedName = new byte[name.length];
+        record.get(storedName);
+        if (!Arrays.equals(storedName, name)) {
+            return null;
+        }
+        byte[] pseudonym = new byte[PSEUDONYM_BYTES];
+        record.get(pseudonym);
+        return pseudonym;
+    }
+
+    private int firstSlot(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+    }
+
+    /**
+     * Formats the random bytes as a version 4 UUID, the same shape as the ids of the default obfuscation.
+     */
+    private static String format(byte[] pseudonym) {
+        ByteBuffer bytes = ByteBuffer.wrap(pseudonym);
+        long mostSignificant = (bytes.getLong() & ~0xF000L) | 0x4000L;
+        long leastSignificant = (bytes.getLong() & ~(0xC000L << 48)) | (0x8000L << 48);
+        return new UUID(mostSignificant, leastSignificant).toString();
+    }
+
+    /**
+     * The formatted pseudonyms of the most recently looked up usernames, evicting the least recently used.
+     */
+    private static final class RecentPseudonyms extends LinkedHashMap<String, String> {
+        private static final long serialVersionUID = 1L;
+
+        RecentPseudonyms() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Represents a bounded, least-recently-used cache of redacted message bodies, so the bodies that repeat throughout
+ * a log (bot notices, "ok", pasted templates) are redacted once per export rather than every time they appear.
+ * <p>
+ * Entries are keyed by the redaction configuration and the message text, and remember how many redactions were made,
+ * so the export metrics are the same with or without the cache. The cache is split into independently locked
+ * segments chosen by the hash of the key, so the threads of a parallel redaction rarely wait for each other.
+ * <p>
+ * Since the texts themselves are kept, the cache is bounded both by its number of entries and by the total length of
+ * the cached texts and their redactions; a text too long to fit in a segment is redacted without being cached.
+ */
+public class RedactionCache {
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final long DEFAULT_MAX_CHARS = 4L << 20;
+    private static final int SEGMENTS = 16;
+    public static final int MIN_CAPACITY = SEGMENTS;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * Initializes a new, empty cache holding up to {@value #DEFAULT_MAX_CHARS} characters of text.
+     *
+     * @param capacity The maximum number of redacted bodies kept.
+     */
+    public RedactionCache(int capacity) {
+        this(capacity, DEFAULT_MAX_CHARS);
+    }
+
+    /**
+     * Initializes a new, empty cache.
+     *
+     * @param capacity The maximum number of redacted bodies kept.
+     * @param maxChars The maximum total length of the texts and redacted texts kept.
+     */
+    public RedactionCache(int capacity, long maxChars) {
+        if (capacity < MIN_CAPACITY) {
+            throw new IllegalArgumentException("The redaction cache must hold at least " + MIN_CAPACITY + " entries, but its capacity was " + capacity + ".");
+        }
+        if (maxChars < SEGMENTS) {
+            throw new IllegalArgumentException("The redaction cache must hold at least " + SEGMENTS + " characters, but its limit was " + maxChars + ".");
+        }
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity / SEGMENTS, maxChars / SEGMENTS);
+        }
+    }
+
+    /**
+     * Returns the given {@code text} redacted by {@code redaction}, from the cache when the same text was already
+     * redacted with the same {@code configuration}.
+     *
+     * @param configuration Identifies the redaction and its settings; texts are only shared between equal configurations.
+     * @param text          The message text.
+     * @param metrics       The metrics the hit or miss and the number of redactions are added to.
+     * @param redaction     The redaction, which adds the number of redactions it makes to the given counter.
+     * @return The redacted text.
+     */
+    public String redact(String configuration, String text, ExportMetrics metrics,
+                         BiFunction<String, AtomicLong, String> redaction) {
+        Key key = new Key(configuration, text);
+        Segment segment = segments[(key.hash ^ (key.hash >>> 16)) & (SEGMENTS - 1)];
+        Result result;
+        synchronized (segment) {
+            result = segment.get(key);
+        }
+        if (result != null) {
+            metrics.redactionCacheHits.incrementAndGet();
+        } else {
+            metrics.redactionCacheMisses.incrementAndGet();
+            AtomicLong redactions = new AtomicLong();
+            result = new Result(redaction.apply(text, redactions), redactions.get());
+            synchronized (segment) {
+                segment.add(key, result);
+            }
+        }
+        metrics.redactions.addAndGet(result.redactions);
+        return result.redacted;
+    }
+
+    /**
+     * One independently locked part of the cache, evicting its least recently used results when full.
+     */
+    private static final class Segment extends LinkedHashMap<Key, Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final long maxChars;
+        private long chars;
+
+        Segment(int capacity, long maxChars) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.maxChars = maxChars;
+        }
+
+        /**
+         * Caches the given {@code result}, unless it alone is longer than the segment allows, then evicts the least
+         * recently used results until the segment is within its bounds.
+         */
+        void add(Key key, Result result) {
+            long length = length(key, result);
+            if (length > maxChars) {
+                return;
+            }
+            Result replaced = put(key, result);
+            chars += length - (replaced == null ? 0 : length(key, replaced));
+            Iterator<Map.Entry<Key, Result>> eldest = entrySet().iterator();
+            while (size() > capacity || chars > maxChars) {
+                Map.Entry<Key, Result> entry = eldest.next();
+                chars -= length(entry.getKey(), entry.getValue());
+                eldest.remove();
+            }
+        }
+
+        private static long length(Key key, Result result) {
+            return (long) key.text.length() + result.redacted.length();
+        }
+    }
+
+    private static final class Key {
+        final String configuration;
+        final String text;
+        final int hash;
+
+        Key(String configuration, String text) {
+            this.configuration = configuration;
+            this.text = text;
+            this.hash = 31 * configuration.hashCode() + text.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash && text.equals(key.text) && configuration.equals(key.configuration);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Result {
+        final String redacted;
+        final long redactions;
+
+        Result(String redacted, long redactions) {
+            this.redacted = redacted;
+            this.redactions = redactions;
+        }
+    }
+}
@@ -28,12 +28,20 @@ public class Report {
                 countOccurences.put(s.username, 1);
             }
         });
+        return makeReport(countOccurences);
+    }
+
+    /**
+     * Method takes in the number of messages sent by each user, for example as precomputed by a
+     * {@link ConversationSnapshot}, and converts it into a String List sorted in reverse order.
+     *
+     * @param countOccurences The number of messages sent by each username.
+     * @return List counting the number of occurances of every username
+     */
+    public List<String> makeReport(Map<String, Integer> countOccurences) {
         mostActiveRanking.add("This is the report for the most active users, in order" +
                 "of the number of messages they sent: ");
-        List<Map.Entry<String, Integer>> counted = countOccurences.entrySet().stream().sorted(Map.Entry.comparingByValue())
-                .collect(Collectors.toList());
-        Collections.reverse(counted);
-        counted.forEach(s -> {
+        rank(countOccurences).forEach(s -> {
             mostActiveRanking.add(s.toString());
 
         });
@@ -41,5 +49,20 @@ public class Report {
         return mostActiveRanking;
     }
 
+    /**
+     * Method sorts the number of messages sent by each user in reverse order, the order of the report. Users with
+     * the same count are ordered by username, also in reverse, so the order never depends on the map given.
+     *
+     * @param countOccurences The number of messages sent by each username.
+     * @return The users and their counts, most active first.
+     */
+    public List<Map.Entry<String, Integer>> rank(Map<String, Integer> countOccurences) {
+        List<Map.Entry<String, Integer>> counted = countOccurences.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                .collect(Collectors.toList());
+        Collections.reverse(counted);
+        return counted;
+    }
+
 
 }
@@ -0,0 +1,86 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Represents a uniformly random sample of at most {@code size} of the messages offered to it, kept with reservoir
+ * sampling so that a single pass over any number of messages needs memory for the sample only.
+ * <p>
+ * The random choices come from a seeded generator, so the same input and seed always give the same sample.
+ */
+public class ReservoirSample {
+    public static final long DEFAULT_SEED = 0x5EED;
+
+    private final Message[] reservoir;
+    private final long[] arrivals;
+    private final SplittableRandom random;
+    private long offered;
+
+    /**
+     * Initializes a new, empty sample.
+     *
+     * @param size The number of messages sampled.
+     * @param seed The seed of the random choices.
+     */
+    public ReservoirSample(int size, long seed) {
+        if (size < 1) {
+            throw new IllegalArgumentException("At least one message must be sampled, but the sample size was " + size + ".");
+        }
+        this.reservoir = new Message[size];
+        this.arrivals = new long[size];
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Offers the given {@code message} to the sample. The first {@code size} messages are all kept; after that the
+     * n-th message replaces a random one of them with probability {@code size / n}.
+     *
+     * @param message The message.
+     */
+    public void offer(Message message) {
+        long arrival = offered++;
+        int slot;
+        if (arrival < reservoir.length) {
+            slot = (int) arrival;
+        } else {
+            long candidate = random.nextLong(offered);
+            if (candidate >= reservoir.length) {
+                return;
+            }
+            slot = (int) candidate;
+        }
+        reservoir[slot] = message;
+        arrivals[slot] = arrival;
+    }
+
+    /**
+     * @return The number of messages offered to the sample.
+     */
+    public long offered() {
+        return offered;
+    }
+
+    /**
+     * Returns the sampled messages ordered by timestamp, with messages sharing a timestamp in the order they arrived.
+     *
+     * @return The sample.
+     */
+    public List<Message> messages() {
+        int size = (int) Math.min(offered, reservoir.length);
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing((Integer slot) -> reservoir[slot].unix_timestamp)
+                .thenComparingLong(slot -> arrivals[slot]));
+        List<Message> messages = new ArrayList<>(size);
+        for (Integer slot : order) {
+            messages.add(reservoir[slot]);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,198 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Represents a reader that streams the messages of a conversation text file from its last line to its first, so
+ * the newest messages of a huge log can be found without reading the older ones.
+ * <p>
+ * The conversation name is read from the start of the file. The messages are then read in blocks from the end,
+ * and each block is searched backwards for line ends with a {@link ByteScanner}; lines are split and parsed exactly
+ * as by a {@link ChatReader}.
+ */
+public class ReverseChatReader implements MessageSource {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The name of the conversation, read from the first line of the file.
+     */
+    public final String conversationName;
+
+    /**
+     * The number of lines read so far, including the conversation name.
+     */
+    public long linesRead;
+
+    private final RandomAccessFile file;
+    private final ChatLineParser parser = new ChatLineParser();
+    private final long firstMessageOffset;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private long bufferStart;
+    private long cursor;
+    private boolean finished;
+
+    /**
+     * Opens the conversation at the given {@code inputFilePath} and reads its name.
+     *
+     * @param inputFilePath The conversation text file.
+     * @throws IOException Thrown when the file cannot be opened or read.
+     */
+    public ReverseChatReader(String inputFilePath) throws IOException {
+        file = new RandomAccessFile(inputFilePath, "r");
+        try {
+            long length = file.length();
+            long nameEnd = findFirstLineEnd(length);
+            String name = null;
+            if (length > 0) {
+                byte[] nameBytes = new byte[(int) nameEnd];
+                file.seek(0);
+                file.readFully(nameBytes);
+                name = new String(nameBytes, ChatLineParser.CHARSET);
+            }
+            conversationName = name;
+            if (nameEnd == length) {
+                firstMessageOffset = length;
+            } else {
+                firstMessageOffset = nameEnd + (byteAt(nameEnd) == '\r' && nameEnd + 1 < length && byteAt(nameEnd + 1) == '\n' ? 2 : 1);
+            }
+            linesRead = 1;
+            bufferStart = length;
+            cursor = length;
+            finished = firstMessageOffset == length;
+            if (!finished) {
+                loadEarlierBlock();
+                cursor = skipLineEnd(cursor);
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String conversationName() {
+        return conversationName;
+    }
+
+    @Override
+    public long linesRead() {
+        return linesRead;
+    }
+
+    /**
+     * Reads the message before the last one read, starting from the last message of the file.
+     *
+     * @return The message, or {@code null} when the first message has been read.
+     * @throws IOException Thrown when the file cannot be read.
+     */
+    @Override
+    public Message next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        long lineEnd = previousLineEnd();
+        long lineStart = lineEnd < 0 ? firstMessageOffset : lineEnd + 1;
+        linesRead++;
+        Message message = parser.parse(buffer, (int) (lineStart - bufferStart), (int) (cursor - bufferStart));
+        if (message == null) {
+            throw new IllegalArgumentException("Line " + (linesRead - 1) + " from the end is not a '<unix_timestamp> <username> <message>' line.");
+        }
+        if (lineEnd < 0) {
+            finished = true;
+        } else {
+            cursor = skipLineEnd(lineEnd + 1);
+        }
+        return message;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Finds the last line end before {@code cursor} and after the conversation name, loading earlier blocks into
+     * the buffer until one is found.
+     *
+     * @return The file position of the line end, or -1 when the unread line is the first message of the file.
+     */
+    private long previousLineEnd() throws IOException {
+        long searchEnd = cursor;
+        while (true) {
+            long searchStart = Math.max(bufferStart, firstMessageOffset);
+            int found = ByteScanner.lastIndexOfLineEnd(buffer, (int) (searchStart - bufferStart), (int) (searchEnd - bufferStart));
+            if (found >= 0) {
+                return bufferStart + found;
+            }
+            if (searchStart == firstMessageOffset) {
+                return -1;
+            }
+            searchEnd = bufferStart;
+            loadEarlierBlock();
+        }
+    }
+
+    /**
+     * Moves back over the line end that ends just before {@code position}, treating "\r\n" as one line end as
+     * {@link java.io.BufferedReader#readLine()} does.
+     *
+     * @return The position after the content of the line ended there.
+     */
+    private long skipLineEnd(long position) throws IOException {
+        byte last = byteAt(position - 1);
+        if (last == '\n') {
+            return position - 2 >= firstMessageOffset && byteAt(position - 2) == '\r' ? position - 2 : position - 1;
+        }
+        return last == '\r' ? position - 1 : position;
+    }
+
+    /**
+     * Reads the block of the file before the buffer into the buffer, keeping the unread bytes from the start of
+     * the buffer up to the cursor, and growing the buffer when a single line is longer than it.
+     */
+    private void loadEarlierBlock() throws IOException {
+        int kept = (int) (cursor - bufferStart);
+        long start = Math.max(0, bufferStart - BUFFER_SIZE);
+        int read = (int) (bufferStart - start);
+        if (kept + read > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, kept + read)];
+            System.arraycopy(buffer, 0, grown, read, kept);
+            buffer = grown;
+        } else {
+            System.arraycopy(buffer, 0, buffer, read, kept);
+        }
+        file.seek(start);
+        file.readFully(buffer, 0, read);
+        bufferStart = start;
+    }
+
+    private byte byteAt(long position) throws IOException {
+        if (position >= bufferStart && position < cursor) {
+            return buffer[(int) (position - bufferStart)];
+        }
+        file.seek(position);
+        return file.readByte();
+    }
+
+    /**
+     * Finds the end of the conversation name, reading from the start of the file.
+     *
+     * @return The position of the first line end, or {@code length} when the file has a single line.
+     */
+    private long findFirstLineEnd(long length) throws IOException {
+        byte[] block = new byte[BUFFER_SIZE];
+        long position = 0;
+        file.seek(0);
+        while (position < length) {
+            int read = (int) Math.min(block.length, length - position);
+            file.readFully(block, 0, read);
+            int found = ByteScanner.indexOfLineEnd(block, 0, read);
+            if (found >= 0) {
+                return position + found;
+            }
+            position += read;
+        }
+        return length;
+    }
+}
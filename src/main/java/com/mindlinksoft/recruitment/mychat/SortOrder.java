@@ -0,0 +1,17 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.util.Comparator;
+
+/**
+ * The orders a sorted export can write its messages in.
+ */
+public enum SortOrder {
+    TIME(Comparator.comparing((Message message) -> message.unix_timestamp)),
+    USER(Comparator.comparing((Message message) -> message.username).thenComparing(message -> message.unix_timestamp));
+
+    final Comparator<Message> comparator;
+
+    SortOrder(Comparator<Message> comparator) {
+        this.comparator = comparator;
+    }
+}
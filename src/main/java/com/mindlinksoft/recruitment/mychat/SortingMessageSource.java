@@ -0,0 +1,290 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Represents the messages of another {@link MessageSource} sorted into a {@link SortOrder} with an external merge
+ * sort, so inputs far larger than the heap can be sorted.
+ * <p>
+ * The input is read on the first call to {@link #next()}. Messages are collected until {@code bufferSize} of them
+ * are held, then sorted and spilled to a temporary run file. Once the input ends, the runs are merged with a
+ * {@link MergingMessageSource}, reading one message of each run at a time. At most {@code maxFanIn} runs are
+ * merged at once: while there are more, consecutive groups of runs are merged into longer intermediate runs first, so
+ * the number of open files and read buffers stays bounded however large the input. When the whole input fits in the
+ * buffer nothing is spilled. The sort is stable: messages that compare equal keep their input order.
+ */
+public class SortingMessageSource implements MessageSource {
+    public static final int DEFAULT_BUFFER_SIZE = 100_000;
+    public static final int DEFAULT_MAX_FAN_IN = 64;
+
+    private final MessageSource input;
+    private final SortOrder order;
+    private final int bufferSize;
+    private final int maxFanIn;
+    /**
+     * The run files not yet deleted; in input order once a merge pass completes.
+     */
+    private List<Path> runs = new ArrayList<>();
+    private int spilledRuns;
+    private MessageSource sorted;
+
+    /**
+     * Initializes a sorted view of the given {@code input}.
+     *
+     * @param input      The messages to sort; they are closed with this source.
+     * @param order      The order the messages are returned in.
+     * @param bufferSize The number of messages held in memory before a sorted run is spilled to disk.
+     */
+    public SortingMessageSource(MessageSource input, SortOrder order, int bufferSize) {
+        this(input, order, bufferSize, DEFAULT_MAX_FAN_IN);
+    }
+
+    /**
+     * Initializes a sorted view of the given {@code input}, merging at most {@code maxFanIn} runs at once.
+     *
+     * @param input      The messages to sort; they are closed with this source.
+     * @param order      The order the messages are returned in.
+     * @param bufferSize The number of messages held in memory before a sorted run is spilled to disk.
+     * @param maxFanIn   The maximum number of runs read at once by a merge.
+     */
+    public SortingMessageSource(MessageSource input, SortOrder order, int bufferSize, int maxFanIn) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("At least one message must be sorted in memory, but the buffer size was " + bufferSize + ".");
+        }
+        if (maxFanIn < 2) {
+            throw new IllegalArgumentException("A merge must read at least two runs at once, but the fan-in was " + maxFanIn + ".");
+        }
+        this.input = input;
+        this.order = order;
+        this.bufferSize = bufferSize;
+        this.maxFanIn = maxFanIn;
+    }
+
+    @Override
+    public String conversationName() {
+        return input.conversationName();
+    }
+
+    @Override
+    public Message next() throws IOException {
+        if (sorted == null) {
+            sorted = sort();
+        }
+        return sorted.next();
+    }
+
+    @Override
+    public long linesRead() {
+        return input.linesRead();
+    }
+
+    /**
+     * @return The number of sorted runs spilled to disk.
+     */
+    public int spilledRuns() {
+        return spilledRuns;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (sorted != null) {
+                sorted.close();
+            }
+            input.close();
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    private MessageSource sort() throws IOException {
+        List<Message> buffer = new ArrayList<>();
+        Message message;
+        while ((message = input.next()) != null) {
+            buffer.add(message);
+            if (buffer.size() == bufferSize) {
+                spill(buffer);
+                buffer = new ArrayList<>();
+            }
+        }
+        buffer.sort(order.comparator);
+        if (runs.isEmpty()) {
+            return new BufferedRun(buffer);
+        }
+        while (runs.size() + 1 > maxFanIn) {
+            mergePass();
+        }
+        List<MessageSource> sources = openRuns(runs);
+        sources.add(new BufferedRun(buffer));
+        return new MergingMessageSource(sources, order.comparator);
+    }
+
+    /**
+     * Merges each group of {@code maxFanIn} consecutive runs into one intermediate run, keeping the runs in input
+     * order so the sort stays stable, and deletes the merged runs.
+     */
+    private void mergePass() throws IOException {
+        List<Path> pass = new ArrayList<>(runs);
+        List<Path> merged = new ArrayList<>();
+        for (int from = 0; from < pass.size(); from += maxFanIn) {
+            List<Path> group = pass.subList(from, Math.min(from + maxFanIn, pass.size()));
+            if (group.size() == 1) {
+                merged.add(group.get(0));
+                continue;
+            }
+            Path run = Files.createTempFile("mychat-sort", ".run");
+            runs.add(run);
+            merged.add(run);
+            try (MessageSource source = new MergingMessageSource(openRuns(group), order.comparator);
+                 DataOutputStream out = newRunWriter(run)) {
+                Message message;
+                while ((message = source.next()) != null) {
+                    writeMessage(out, message);
+                }
+            }
+            for (Path path : group) {
+                Files.delete(path);
+            }
+            runs.removeAll(group);
+        }
+        runs = merged;
+    }
+
+    /**
+     * Opens a reader on each of the given {@code paths}, closing those already opened when one cannot be.
+     */
+    private List<MessageSource> openRuns(List<Path> paths) throws IOException {
+        List<MessageSource> sources = new ArrayList<>(paths.size() + 1);
+        try {
+            for (Path run : paths) {
+                sources.add(new RunReader(run));
+            }
+        } catch (IOException e) {
+            for (MessageSource source : sources) {
+                source.close();
+            }
+            throw e;
+        }
+        return sources;
+    }
+
+    /**
+     * Sorts the given {@code buffer} and writes it to a new temporary run file.
+     */
+    private void spill(List<Message> buffer) throws IOException {
+        buffer.sort(order.comparator);
+        Path run = Files.createTempFile("mychat-sort", ".run");
+        runs.add(run);
+        spilledRuns++;
+        try (DataOutputStream out = newRunWriter(run)) {
+            for (Message message : buffer) {
+                writeMessage(out, message);
+            }
+        }
+    }
+
+    private static DataOutputStream newRunWriter(Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16));
+    }
+
+    private static void writeMessage(DataOutputStream out, Message message) throws IOException {
+        out.writeLong(message.unix_timestamp.getEpochSecond());
+        out.writeInt(message.unix_timestamp.getNano());
+        writeString(out, message.username);
+        writeString(out, message.message);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * The last, unspilled run, still in memory.
+     */
+    private final class BufferedRun implements MessageSource {
+        private final Iterator<Message> messages;
+
+        BufferedRun(List<Message> messages) {
+            this.messages = messages.iterator();
+        }
+
+        @Override
+        public String conversationName() {
+            return input.conversationName();
+        }
+
+        @Override
+        public Message next() {
+            return messages.hasNext() ? messages.next() : null;
+        }
+
+        @Override
+        public long linesRead() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * A sorted run read back from its file.
+     */
+    private final class RunReader implements MessageSource {
+        private final DataInputStream in;
+
+        RunReader(Path run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+        }
+
+        @Override
+        public String conversationName() {
+            return input.conversationName();
+        }
+
+        @Override
+        public Message next() throws IOException {
+            long seconds;
+            try {
+                seconds = in.readLong();
+            } catch (EOFException e) {
+                return null;
+            }
+            Instant timestamp = Instant.ofEpochSecond(seconds, in.readInt());
+            return new Message(timestamp, readString(), readString());
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public long linesRead() {
+            return 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Counts the messages of the most active users with the Space-Saving algorithm, in bounded memory however many
+ * users there are: at most {@code capacity} counters are kept, and a new user takes over the counter of the least
+ * active tracked user, starting from its count. Every user who sent more than {@code 1 / capacity} of the messages
+ * is therefore tracked, and the counts reported are exact until the counters run out, and otherwise never less than
+ * the true count nor more than {@code messages / capacity} above it.
+ * <p>
+ * The counters are kept in a Stream-Summary: a list of buckets in increasing count order, each holding the counters
+ * with that count, so counting a message and finding and replacing the least active user take constant time.
+ */
+final class StreamSummary {
+    private final Map<String, Counter> counters = new HashMap<>();
+    private Bucket smallest;
+    private final int capacity;
+
+    /**
+     * Initializes a new, empty summary.
+     *
+     * @param capacity The number of users whose message counts are tracked.
+     */
+    StreamSummary(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("At least one user must be tracked, but " + capacity + " were.");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Counts one message of the given {@code username}.
+     *
+     * @param username The sender of the message.
+     */
+    void add(String username) {
+        Counter counter = counters.get(username);
+        if (counter != null) {
+            increment(counter);
+        } else if (counters.size() < capacity) {
+            counter = new Counter(username);
+            counters.put(username, counter);
+            if (smallest == null || smallest.count != 1) {
+                Bucket bucket = new Bucket(1);
+                bucket.next = smallest;
+                if (smallest != null) {
+                    smallest.previous = bucket;
+                }
+                smallest = bucket;
+            }
+            smallest.add(counter);
+        } else {
+            counter = smallest.first;
+            counters.remove(counter.username);
+            counter.username = username;
+            counters.put(username, counter);
+            increment(counter);
+        }
+    }
+
+    /**
+     * Moves the given {@code counter} to the bucket one count higher, creating that bucket when there is none and
+     * dropping its old bucket when it empties.
+     */
+    private void increment(Counter counter) {
+        Bucket bucket = counter.bucket;
+        Bucket next = bucket.next;
+        if (next == null || next.count != bucket.count + 1) {
+            next = new Bucket(bucket.count + 1);
+            next.previous = bucket;
+            next.next = bucket.next;
+            if (bucket.next != null) {
+                bucket.next.previous = next;
+            }
+            bucket.next = next;
+        }
+        bucket.remove(counter);
+        next.add(counter);
+        if (bucket.first == null) {
+            if (bucket.previous != null) {
+                bucket.previous.next = bucket.next;
+            } else {
+                smallest = bucket.next;
+            }
+            bucket.next.previous = bucket.previous;
+        }
+    }
+
+    /**
+     * Returns the {@code limit} users with the highest counts, highest first and ties by descending username.
+     *
+     * @param limit The maximum number of users returned.
+     * @return The usernames and their message counts.
+     */
+    List<Map.Entry<String, Integer>> top(int limit) {
+        return counters.values().stream()
+                .sorted(Comparator.comparingInt((Counter counter) -> counter.bucket.count)
+                        .thenComparing(counter -> counter.username).reversed())
+                .limit(limit)
+                .map(counter -> new AbstractMap.SimpleImmutableEntry<>(counter.username, counter.bucket.count))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The message count of one tracked user, linked to the other counters of its bucket.
+     */
+    private static final class Counter {
+        String username;
+        Bucket bucket;
+        Counter previous;
+        Counter next;
+
+        Counter(String username) {
+            this.username = username;
+        }
+    }
+
+    /**
+     * The counters sharing one count, linked to the buckets of the next lower and higher counts.
+     */
+    private static final class Bucket {
+        final int count;
+        Bucket previous;
+        Bucket next;
+        Counter first;
+
+        Bucket(int count) {
+            this.count = count;
+        }
+
+        void add(Counter counter) {
+            counter.bucket = this;
+            counter.previous = null;
+            counter.next = first;
+            if (first != null) {
+                first.previous = counter;
+            }
+            first = counter;
+        }
+
+        void remove(Counter counter) {
+            if (counter.previous != null) {
+                counter.previous.next = counter.next;
+            } else {
+                first = counter.next;
+            }
+            if (counter.next != null) {
+                counter.next.previous = counter.previous;
+            }
+        }
+    }
+}
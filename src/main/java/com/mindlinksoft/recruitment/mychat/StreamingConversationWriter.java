@@ -0,0 +1,108 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents a writer that produces the same JSON document as a serialized {@link Conversation}, one message at a
+ * time, so the messages never have to be held in memory. The activity report, which is only known once every
+ * message has been seen, is written last.
+ */
+public class StreamingConversationWriter implements Closeable {
+    protected final Gson gson;
+    protected final JsonWriter jsonWriter;
+
+    /**
+     * Starts the document on the given {@code outputStream}.
+     *
+     * @param outputStream     The stream the document is written to; it is closed with this writer.
+     * @param conversationName The name of the conversation.
+     * @throws IOException Thrown when the output cannot be written.
+     */
+    public StreamingConversationWriter(OutputStream outputStream, String conversationName) throws IOException {
+        this(outputStream);
+        jsonWriter.name("conversation_name").value(conversationName);
+        jsonWriter.name("messages").beginArray();
+    }
+
+    /**
+     * Opens the document object on the given {@code outputStream}, leaving its fields to the subclass.
+     *
+     * @param outputStream The stream the document is written to; it is closed with this writer.
+     * @throws IOException Thrown when the output cannot be written.
+     */
+    protected StreamingConversationWriter(OutputStream outputStream) throws IOException {
+        gson = new GsonBuilder().registerTypeAdapter(Instant.class, new InstantSerializer()).create();
+        jsonWriter = new JsonWriter(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 1 << 16));
+        jsonWriter.setSerializeNulls(false);
+        jsonWriter.beginObject();
+    }
+
+    /**
+     * Appends the given {@code message} to the messages array.
+     *
+     * @param message The message to write.
+     */
+    public void write(Message message) {
+        gson.toJson(message, Message.class, jsonWriter);
+    }
+
+    /**
+     * Ends the messages array and writes the activity report of the given per-user message counts, followed by the
+     * windowed activity and trending terms reports.
+     *
+     * @param userActivity    The number of messages written for each user.
+     * @param activityWindows The windowed activity report, or {@code null} to leave it out.
+     * @param trendingTerms   The trending terms report, or {@code null} to leave it out.
+     * @throws IOException Thrown when the output cannot be written.
+     */
+    public void finish(Map<String, Integer> userActivity, WindowedActivityReport.Summary activityWindows, List<String> trendingTerms) throws IOException {
+        jsonWriter.endArray();
+        jsonWriter.name("user_activity_report");
+        gson.toJson(new Report().makeReport(userActivity), List.class, jsonWriter);
+        writeOptionalReports(activityWindows, trendingTerms);
+        jsonWriter.endObject();
+    }
+
+    /**
+     * Writes whichever of the windowed activity and trending terms reports were made.
+     *
+     * @throws IOException Thrown when the output cannot be written.
+     */
+    protected void writeOptionalReports(WindowedActivityReport.Summary activityWindows, List<String> trendingTerms) throws IOException {
+        if (activityWindows != null) {
+            jsonWriter.name("activity_windows");
+            writeActivityWindows(activityWindows);
+        }
+        if (trendingTerms != null) {
+            jsonWriter.name("trending_terms");
+            gson.toJson(trendingTerms, List.class, jsonWriter);
+        }
+    }
+
+    /**
+     * Writes the value of the windowed activity report.
+     *
+     * @param activityWindows The windowed activity report.
+     * @throws IOException Thrown when the output cannot be written.
+     */
+    protected void writeActivityWindows(WindowedActivityReport.Summary activityWindows) throws IOException {
+        gson.toJson(activityWindows, WindowedActivityReport.Summary.class, jsonWriter);
+    }
+
+    @Override
+    public void close() throws IOException {
+        jsonWriter.close();
+    }
+}
@@ -0,0 +1,393 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Represents an export that streams messages from a {@link MessageSource} through obfuscation, the filter, the
+ * word redaction and card/phone hiding straight into a {@link StreamingConversationWriter}, keeping only the
+ * activity counts in memory.
+ * <p>
+ * The time spent in each stage and the message counts are accumulated in plain fields of the export and added to
+ * the exporter's {@link ExportMetrics} once, when the export finishes, so no message pays for updating shared
+ * counters. When the stages run on separate threads each stage is only timed on one of them, and each stage's
+ * totals sit on their own cache line.
+ */
+public class StreamingExport {
+    /**
+     * The longs kept per stage in {@code stageTotals}: its nanoseconds, its items, then padding up to 64 bytes.
+     */
+    private static final int STAGE_SLOT = 8;
+
+    private final ConversationExporter exporter;
+
+    /**
+     * The messages kept, tested after user ids are obfuscated.
+     */
+    public Predicate<Message> filter = message -> true;
+
+    /**
+     * The redaction applied to the body of every kept message before card and phone numbers are hidden.
+     */
+    public UnaryOperator<String> redaction = UnaryOperator.identity();
+
+    /**
+     * The windowed activity report accumulated from the kept messages, or {@code null} for none.
+     */
+    public WindowedActivityReport windowedReport;
+
+    /**
+     * The trending terms report accumulated from the kept messages, or {@code null} for none.
+     */
+    public TrendingTermsReport trendingTerms;
+
+    /**
+     * The filter dropping repeated messages before anything else sees them, or {@code null} to keep repeats.
+     */
+    public DuplicateFilter duplicates;
+
+    /**
+     * The sample the kept messages are offered to, written in timestamp order once the input ends, or {@code null}
+     * to write every kept message as it arrives.
+     */
+    public ReservoirSample sample;
+
+    /**
+     * The JSON schema the export is written in.
+     */
+    public OutputFormat format = OutputFormat.STANDARD;
+
+    /**
+     * The number of messages the filter keeps that are skipped before the first one is written.
+     */
+    public long offset;
+
+    /**
+     * The most messages written after the offset, or 0 for no limit; the input stops being read once that many
+     * are kept.
+     */
+    public long limit;
+
+    /**
+     * Whether the source gives the newest messages first, as a {@link ReverseChatReader} does. The kept messages are
+     * then held until the input stops being read, and written oldest first.
+     */
+    public boolean newestFirst;
+
+    public boolean hideCardAndPhoneNumbers;
+    public boolean obfuscateUserIds;
+
+    private Map<String, Integer> userActivity;
+    private final List<Message> newestMessages = new ArrayList<>();
+    private long selected;
+    private volatile boolean complete;
+    private final long[] stageTotals = new long[ExportStage.values().length * STAGE_SLOT];
+    private long kept;
+    private long dropped;
+    private long duplicatesDropped;
+
+    /**
+     * Initializes a streaming export using the obfuscation, card/phone hiding and metrics of the given {@code exporter}.
+     *
+     * @param exporter The exporter.
+     */
+    public StreamingExport(ConversationExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    /**
+     * Initializes a streaming export configured by the options of the given {@code exporter}, with a new duplicate
+     * filter, sample, windowed activity report and trending terms report when the options ask for them.
+     *
+     * @param exporter                The exporter whose options, metrics, obfuscation and card/phone hiding are used.
+     * @param hideCardAndPhoneNumbers Whether card and phone numbers are hidden.
+     * @param obfuscateUserIds        Whether user ids are obfuscated.
+     * @return The export, which keeps every message until its filter is set.
+     */
+    public static StreamingExport fromOptions(ConversationExporter exporter, boolean hideCardAndPhoneNumbers, boolean obfuscateUserIds) {
+        ExportOptions options = exporter.options;
+        StreamingExport export = new StreamingExport(exporter);
+        export.hideCardAndPhoneNumbers = hideCardAndPhoneNumbers;
+        export.obfuscateUserIds = obfuscateUserIds;
+        export.format = options.outputFormat;
+        if (options.activityWindow != null) {
+            export.windowedReport = new WindowedActivityReport(options.activityWindow, options.windowHistory);
+        }
+        if (options.trendingTerms > 0) {
+            export.trendingTerms = new TrendingTermsReport(options.trendingTerms, options.stopWords);
+        }
+        if (options.deduplicate) {
+            export.duplicates = new DuplicateFilter(options.dedupWindowSeconds, options.dedupCapacity);
+        }
+        if (options.sampleSize > 0) {
+            export.sample = new ReservoirSample(options.sampleSize, options.sampleSeed);
+        }
+        export.offset = options.offset;
+        export.limit = options.newest > 0 ? options.newest : options.limit;
+        export.newestFirst = options.newest > 0;
+        return export;
+    }
+
+    /**
+     * Streams the messages of {@code source} to {@code outputStream}, until the input ends or the limit is reached.
+     *
+     * @param source       The messages to export.
+     * @param outputStream The stream the JSON document is written to.
+     * @throws IOException Thrown when the input cannot be read or the output cannot be written.
+     */
+    public void run(MessageSource source, OutputStream outputStream) throws IOException {
+        try (StreamingConversationWriter writer = begin(outputStream, source.conversationName())) {
+            Message message;
+            while (!complete && (message = read(source)) != null) {
+                message = transform(message);
+                if (message != null) {
+                    write(writer, message);
+                }
+            }
+            finish(writer, source);
+        }
+    }
+
+    /**
+     * Counts every message of {@code source} that the filter keeps into {@code statistics} and writes only the
+     * statistics to {@code outputStream}. Messages are neither redacted nor serialized.
+     *
+     * @param source       The messages to count.
+     * @param outputStream The stream the JSON statistics are written to.
+     * @param statistics   The statistics the kept messages are counted into.
+     * @throws IOException Thrown when the input cannot be read or the output cannot be written.
+     */
+    public void runStatistics(MessageSource source, OutputStream outputStream, ConversationStatistics statistics) throws IOException {
+        Message message;
+        while (!complete && (message = read(source)) != null) {
+            message = select(message);
+            if (message != null) {
+                long time = System.nanoTime();
+                statistics.add(message);
+                record(ExportStage.REPORT, time);
+                kept++;
+            }
+        }
+        long time = System.nanoTime();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            new Gson().toJson(statistics.finish(source.conversationName()), writer);
+        }
+        record(ExportStage.SERIALIZATION, time);
+        flushMetrics(source);
+    }
+
+    /**
+     * Whether the limit has been reached, so no more of the input needs to be read; every message still read is
+     * dropped.
+     *
+     * @return {@code true} once the limit number of messages have been kept.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Starts the JSON document; the first of the stages {@link #run} goes through, exposed so that the stages can
+     * also run on separate threads.
+     *
+     * @param outputStream     The stream the JSON document is written to.
+     * @param conversationName The name of the conversation.
+     * @return The writer the kept messages are written to.
+     * @throws IOException Thrown when the output cannot be written.
+     */
+    public StreamingConversationWriter begin(OutputStream outputStream, String conversationName) throws IOException {
+        userActivity = new HashMap<>();
+        if (format == OutputFormat.COMPACT) {
+            return new CompactConversationWriter(outputStream, conversationName);
+        }
+        return new StreamingConversationWriter(outputStream, conversationName);
+    }
+
+    /**
+     * Reads the next message from {@code source}, timed as the parse stage.
+     *
+     * @param source The messages to export.
+     * @return The next message, or {@code null} when there are no more.
+     * @throws IOException Thrown when the input cannot be read.
+     */
+    public Message read(MessageSource source) throws IOException {
+        long start = System.nanoTime();
+        Message message = source.next();
+        record(ExportStage.PARSE, start);
+        return message;
+    }
+
+    /**
+     * Drops repeats of earlier messages, then obfuscates, filters and redacts the given {@code message}. When
+     * sampling, redaction is left until the sample is written, so only the sampled messages are redacted.
+     *
+     * @param message The message read from the input.
+     * @return The message to write, or {@code null} when it is a repeat or the filter drops it.
+     */
+    public Message transform(Message message) {
+        message = select(message);
+        if (message == null || sample != null) {
+            return message;
+        }
+        return redact(message);
+    }
+
+    /**
+     * Drops repeats of earlier messages, then obfuscates and filters the given {@code message}, and drops it when
+     * it comes before the offset or after the limit.
+     *
+     * @param message The message read from the input.
+     * @return The obfuscated message, or {@code null} when it is a repeat, the filter drops it or it is out of range.
+     */
+    private Message select(Message message) {
+        long time = System.nanoTime();
+        if (duplicates != null) {
+            boolean repeated = duplicates.isDuplicate(message);
+            time = record(ExportStage.FILTER, time);
+            if (repeated) {
+                duplicatesDropped++;
+                dropped++;
+                return null;
+            }
+        }
+        if (obfuscateUserIds) {
+            message = new Message(message.unix_timestamp, exporter.obfuscateUserIds(message.username), message.message);
+            time = record(ExportStage.OBFUSCATION, time);
+        }
+        boolean keep = filter.test(message);
+        record(ExportStage.FILTER, time);
+        if (!keep) {
+            dropped++;
+            return null;
+        }
+        if (offset > 0 || limit > 0) {
+            long position = ++selected;
+            if (position <= offset || (limit > 0 && position > offset + limit)) {
+                dropped++;
+                return null;
+            }
+            if (limit > 0 && position == offset + limit) {
+                complete = true;
+            }
+        }
+        return message;
+    }
+
+    private Message redact(Message message) {
+        long time = System.nanoTime();
+        String body = redaction.apply(message.message);
+        if (hideCardAndPhoneNumbers) {
+            body = exporter.redactCardAndPhoneNumbers(body);
+        }
+        record(ExportStage.REDACTION, time);
+        return new Message(message.unix_timestamp, message.username, body);
+    }
+
+    /**
+     * Counts the given kept {@code message} in the reports and writes it, or offers it to the sample when sampling,
+     * or holds it when the newest messages come first.
+     *
+     * @param writer  The writer returned by {@link #begin}.
+     * @param message The transformed message.
+     */
+    public void write(StreamingConversationWriter writer, Message message) {
+        if (sample != null) {
+            sample.offer(message);
+            return;
+        }
+        if (newestFirst) {
+            newestMessages.add(message);
+            return;
+        }
+        writeMessage(writer, message);
+    }
+
+    /**
+     * Writes the sampled messages if sampling, or the held newest messages oldest first, then the reports, ending
+     * the JSON document.
+     *
+     * @param writer The writer returned by {@link #begin}.
+     * @param source The messages that were exported.
+     * @throws IOException Thrown when the output cannot be written.
+     */
+    public void finish(StreamingConversationWriter writer, MessageSource source) throws IOException {
+        if (sample != null) {
+            List<Message> sampled = sample.messages();
+            for (Message message : sampled) {
+                writeMessage(writer, redact(message));
+            }
+            dropped += sample.offered() - sampled.size();
+        } else if (newestFirst) {
+            for (int i = newestMessages.size() - 1; i >= 0; i--) {
+                writeMessage(writer, newestMessages.get(i));
+            }
+        }
+        long time = System.nanoTime();
+        writer.finish(userActivity, windowedReport == null ? null : windowedReport.finish(),
+                trendingTerms == null ? null : trendingTerms.finish());
+        record(ExportStage.SERIALIZATION, time);
+        flushMetrics(source);
+    }
+
+    private void writeMessage(StreamingConversationWriter writer, Message message) {
+        long time = System.nanoTime();
+        userActivity.merge(message.username, 1, Integer::sum);
+        if (windowedReport != null) {
+            windowedReport.add(message);
+        }
+        if (trendingTerms != null) {
+            trendingTerms.add(message);
+        }
+        time = record(ExportStage.REPORT, time);
+        writer.write(message);
+        record(ExportStage.SERIALIZATION, time);
+        kept++;
+    }
+
+    /**
+     * Adds the time since {@code start} and one item to the totals of the given {@code stage}.
+     *
+     * @return The current time, which starts the next stage.
+     */
+    private long record(ExportStage stage, long start) {
+        long now = System.nanoTime();
+        int slot = stage.ordinal() * STAGE_SLOT;
+        stageTotals[slot] += now - start;
+        stageTotals[slot + 1]++;
+        return now;
+    }
+
+    /**
+     * Adds the counts and stage totals accumulated since the last flush to the exporter's metrics.
+     */
+    private void flushMetrics(MessageSource source) {
+        ExportMetrics metrics = exporter.metrics;
+        metrics.linesRead.addAndGet(source.linesRead());
+        metrics.messagesKept.addAndGet(kept);
+        metrics.messagesDropped.addAndGet(dropped);
+        metrics.duplicates.addAndGet(duplicatesDropped);
+        kept = 0;
+        dropped = 0;
+        duplicatesDropped = 0;
+        for (ExportStage stage : ExportStage.values()) {
+            int slot = stage.ordinal() * STAGE_SLOT;
+            if (stageTotals[slot + 1] > 0) {
+                metrics.addStage(stage, stageTotals[slot], stageTotals[slot + 1]);
+                stageTotals[slot] = 0;
+                stageTotals[slot + 1] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class for making the trending terms report, listing the most frequent words of the messages, in a fixed amount of
+ * memory however many distinct words the conversation has.
+ * <p>
+ * Message bodies are split into lower case words of letters and digits, and stop words are skipped. Each word is
+ * counted in a count-min sketch of {@code DEPTH} rows of {@code WIDTH} counters with conservative update, which may
+ * overestimate a count but never underestimates it. The {@code size} words with the highest estimates so far are
+ * kept in a small min-heap that tracks the position of each word, so a listed word whose estimate grows is moved
+ * down in logarithmic time; a word replaces the least frequent of them when its estimate overtakes it.
+ */
+public class TrendingTermsReport {
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1 << 14;
+
+    /**
+     * Common English words left out of the report unless another stop-word list is given. The endings of
+     * contractions such as "I'm" and the replacement text of redacted words are included, so neither trends.
+     */
+    public static final Set<String> DEFAULT_STOP_WORDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "a", "about", "all", "am", "an", "and", "any", "are", "as", "at", "be", "but", "by", "can", "do", "for",
+            "from", "had", "has", "have", "he", "her", "him", "his", "how", "i", "if", "in", "is", "it", "its", "just",
+            "me", "my", "no", "not", "of", "on", "or", "our", "s", "she", "so", "that", "the", "their", "them", "then",
+            "there", "they", "this", "to", "up", "us", "was", "we", "what", "when", "which", "who", "will", "with",
+            "would", "yes", "you", "your", "m", "t", "d", "ll", "re", "ve", "redacted")));
+
+    private final int size;
+    private final Set<String> stopWords;
+    private final int[][] sketch = new int[DEPTH][WIDTH];
+    private final Map<String, Integer> heapPositions = new HashMap<>();
+    private String[] heapTerms = new String[16];
+    private int[] heapCounts = new int[16];
+    private int heapSize;
+    private final int[] indexes = new int[DEPTH];
+
+    /**
+     * Initializes a new report.
+     *
+     * @param size      The number of most frequent words listed.
+     * @param stopWords The lower case words left out of the report.
+     */
+    public TrendingTermsReport(int size, Set<String> stopWords) {
+        if (size < 1) {
+            throw new IllegalArgumentException("At least one term must be listed, but the report size was " + size + ".");
+        }
+        this.size = size;
+        this.stopWords = stopWords;
+    }
+
+    /**
+     * Reads a stop-word list with one word per line; blank lines are ignored.
+     *
+     * @param stopWordsFilePath The file to read.
+     * @return The stop words, in lower case.
+     * @throws IOException Thrown when the file cannot be read.
+     */
+    public static Set<String> readStopWords(String stopWordsFilePath) throws IOException {
+        Set<String> stopWords = new HashSet<>();
+        for (String line : Files.readAllLines(Paths.get(stopWordsFilePath), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                stopWords.add(line.trim().toLowerCase());
+            }
+        }
+        return stopWords;
+    }
+
+    /**
+     * Counts the words of the given {@code message}.
+     *
+     * @param message The message.
+     */
+    public void add(Message message) {
+        String body = message.message;
+        int start = -1;
+        for (int i = 0; i <= body.length(); i++) {
+            boolean wordChar = i < body.length() && Character.isLetterOrDigit(body.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String term = body.substring(start, i).toLowerCase();
+                if (!stopWords.contains(term)) {
+                    count(term);
+                }
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Lists the most frequent words and their estimated counts, most frequent first.
+     *
+     * @return The report, one {@code word=count} entry per word.
+     */
+    public List<String> finish() {
+        List<Integer> positions = new ArrayList<>(heapSize);
+        for (int i = 0; i < heapSize; i++) {
+            positions.add(i);
+        }
+        positions.sort((first, second) -> before(second, first) ? -1 : before(first, second) ? 1 : 0);
+        List<String> report = new ArrayList<>(heapSize);
+        for (int position : positions) {
+            report.add(heapTerms[position] + "=" + heapCounts[position]);
+        }
+        return report;
+    }
+
+    private void count(String term) {
+        long hash = Hashing.hash(term);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            indexes[row] = ((first + row * second) & Integer.MAX_VALUE) % WIDTH;
+            estimate = Math.min(estimate, sketch[row][indexes[row]]);
+        }
+        estimate++;
+        for (int row = 0; row < DEPTH; row++) {
+            if (sketch[row][indexes[row]] < estimate) {
+                sketch[row][indexes[row]] = estimate;
+            }
+        }
+        offer(term, estimate);
+    }
+
+    private void offer(String term, int estimate) {
+        Integer position = heapPositions.get(term);
+        if (position != null) {
+            // Estimates never decrease, so a listed word can only move away from the least frequent.
+            heapCounts[position] = estimate;
+            siftDown(position);
+        } else if (heapSize < size) {
+            if (heapSize == heapTerms.length) {
+                heapTerms = Arrays.copyOf(heapTerms, heapSize * 2);
+                heapCounts = Arrays.copyOf(heapCounts, heapSize * 2);
+            }
+            place(heapSize, term, estimate);
+            siftUp(heapSize++);
+        } else if (estimate > heapCounts[0]) {
+            heapPositions.remove(heapTerms[0]);
+            place(0, term, estimate);
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!before(position, parent)) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            if (left < heapSize && before(left, smallest)) {
+                smallest = left;
+            }
+            if (left + 1 < heapSize && before(left + 1, smallest)) {
+                smallest = left + 1;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    /**
+     * Whether the word at heap {@code position} is less frequent than the one at {@code other}, ties going to the
+     * word later in alphabetical order, so it is replaced first.
+     */
+    private boolean before(int position, int other) {
+        if (heapCounts[position] != heapCounts[other]) {
+            return heapCounts[position] < heapCounts[other];
+        }
+        return heapTerms[position].compareTo(heapTerms[other]) > 0;
+    }
+
+    private void swap(int first, int second) {
+        String term = heapTerms[first];
+        int count = heapCounts[first];
+        place(first, heapTerms[second], heapCounts[second]);
+        place(second, term, count);
+    }
+
+    private void place(int position, String term, int count) {
+        heapTerms[position] = term;
+        heapCounts[position] = count;
+        heapPositions.put(term, position);
+    }
+}
@@ -0,0 +1,188 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Class for making the windowed activity report, counting the messages sent in every minute, hour or day of the
+ * conversation and the most active users of each window, while messages stream past.
+ * <p>
+ * Only the most recent {@code history} windows are kept, in a fixed-size ring buffer, so memory stays bounded no
+ * matter how long the conversation is. A message for a window that is still in the ring is counted there even when
+ * it arrives out of order; older messages are only counted as late. When a window leaves the ring it is summarised
+ * and offered to a small heap of the busiest windows seen so far. The senders of each window are counted in a
+ * {@link StreamSummary} of {@code TRACKED_USERS} counters rather than one counter per user, so a window with many
+ * senders takes no more memory than any other; a user who sent more than {@code 1 / TRACKED_USERS} of a window's
+ * messages is always among its tracked users, with a count at most {@code messages / TRACKED_USERS} too high.
+ */
+public class WindowedActivityReport {
+    public static final int DEFAULT_HISTORY = 24;
+    public static final int TOP_USERS = 3;
+    public static final int TRACKED_USERS = 64;
+    public static final int PEAK_WINDOWS = 3;
+
+    public enum Window {
+        MINUTE(60), HOUR(60 * 60), DAY(24 * 60 * 60);
+
+        final long seconds;
+
+        Window(long seconds) {
+            this.seconds = seconds;
+        }
+    }
+
+    private final Window window;
+    private final WindowCounts[] ring;
+    private int oldest;
+    private int size;
+    private long lateMessages;
+    private final PriorityQueue<WindowSummary> peaks = new PriorityQueue<>(
+            Comparator.comparingInt((WindowSummary summary) -> summary.message_count)
+                    .thenComparing(summary -> -summary.window_start));
+
+    /**
+     * Initializes a new report.
+     *
+     * @param window  The length of each window.
+     * @param history The number of most recent windows kept in the report.
+     */
+    public WindowedActivityReport(Window window, int history) {
+        if (history < 1) {
+            throw new IllegalArgumentException("At least one window must be kept, but the history was " + history + ".");
+        }
+        this.window = window;
+        this.ring = new WindowCounts[history];
+    }
+
+    /**
+     * Counts the given {@code message} in its window.
+     *
+     * @param message The message.
+     */
+    public void add(Message message) {
+        long timestamp = message.unix_timestamp.getEpochSecond();
+        long start = timestamp - Math.floorMod(timestamp, window.seconds);
+        WindowCounts counts = find(start);
+        if (counts == null) {
+            if (size > 0 && start < newest().start) {
+                lateMessages++;
+                return;
+            }
+            counts = open(start);
+        }
+        counts.messageCount++;
+        counts.userCounts.add(message.username);
+    }
+
+    /**
+     * Summarises the windows still in the ring buffer and returns the report.
+     *
+     * @return The report.
+     */
+    public Summary finish() {
+        List<WindowSummary> recent = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            WindowSummary summary = ring[(oldest + i) % ring.length].summarise();
+            recent.add(summary);
+            offerPeak(summary);
+        }
+        List<WindowSummary> peakWindows = new ArrayList<>(peaks);
+        peakWindows.sort(peaks.comparator().reversed());
+        return new Summary(window.name().toLowerCase(), recent, peakWindows, lateMessages);
+    }
+
+    private WindowCounts newest() {
+        return ring[(oldest + size - 1) % ring.length];
+    }
+
+    private WindowCounts find(long start) {
+        for (int i = size - 1; i >= 0; i--) {
+            WindowCounts counts = ring[(oldest + i) % ring.length];
+            if (counts.start == start) {
+                return counts;
+            }
+            if (counts.start < start) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private WindowCounts open(long start) {
+        if (size == ring.length) {
+            offerPeak(ring[oldest].summarise());
+            oldest = (oldest + 1) % ring.length;
+            size--;
+        }
+        WindowCounts counts = new WindowCounts(start);
+        ring[(oldest + size) % ring.length] = counts;
+        size++;
+        return counts;
+    }
+
+    private void offerPeak(WindowSummary summary) {
+        peaks.add(summary);
+        if (peaks.size() > PEAK_WINDOWS) {
+            peaks.poll();
+        }
+    }
+
+    /**
+     * The counts of one window still in the ring buffer.
+     */
+    private static final class WindowCounts {
+        final long start;
+        final StreamSummary userCounts = new StreamSummary(TRACKED_USERS);
+        int messageCount;
+
+        WindowCounts(long start) {
+            this.start = start;
+        }
+
+        WindowSummary summarise() {
+            return new WindowSummary(start, messageCount, userCounts.top(TOP_USERS));
+        }
+    }
+
+    /**
+     * Represents the activity of one window in the JSON output.
+     */
+    public static final class WindowSummary {
+        public final long window_start;
+        public final int message_count;
+        public final List<String> top_users;
+
+        /**
+         * The usernames and message counts behind {@code top_users}, for writers that reference users by index.
+         */
+        public final transient List<Map.Entry<String, Integer>> topUserCounts;
+
+        public WindowSummary(long windowStart, int messageCount, List<Map.Entry<String, Integer>> topUserCounts) {
+            this.window_start = windowStart;
+            this.message_count = messageCount;
+            this.top_users = topUserCounts.stream().map(Map.Entry::toString).collect(Collectors.toList());
+            this.topUserCounts = topUserCounts;
+        }
+    }
+
+    /**
+     * Represents the windowed activity report in the JSON output.
+     */
+    public static final class Summary {
+        public final String window;
+        public final List<WindowSummary> recent_windows;
+        public final List<WindowSummary> peak_windows;
+        public final long late_messages;
+
+        public Summary(String window, List<WindowSummary> recentWindows, List<WindowSummary> peakWindows, long lateMessages) {
+            this.window = window;
+            this.recent_windows = recentWindows;
+            this.peak_windows = peakWindows;
+            this.late_messages = lateMessages;
+        }
+    }
+}
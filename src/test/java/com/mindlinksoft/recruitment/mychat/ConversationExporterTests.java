@@ -1,19 +1,46 @@
 package com.mindlinksoft.recruitment.mychat;
 
 import com.google.gson.*;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests for the {@link ConversationExporter}.
  */
 public class ConversationExporterTests {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     public final String inputFilePath = "chat.txt";
     public final String outputFilePath = "chat.json";
 
@@ -457,4 +484,501 @@ public class ConversationExporterTests {
                     "to the output file.");
         }
     }
+
+    /**
+     * Tests that an export records its per-stage metrics and writes them to the requested metrics file.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testExportMetrics() throws Exception {
+        ConversationExporter exporter = new ConversationExporter();
+        File metricsFile = File.createTempFile("metrics", ".json");
+        metricsFile.deleteOnExit();
+        String[] args = {"hide_word", "pie", "yes", "no", "metrics_file=" + metricsFile.getPath()};
+        exporter.exportConversation(inputFilePath, outputFilePath, args);
+
+        assertEquals(10, exporter.metrics.linesRead.get());
+        assertEquals(9, exporter.metrics.messagesKept.get());
+        assertEquals(0, exporter.metrics.messagesDropped.get());
+        assertEquals(8, exporter.metrics.redactions.get());
+        assertTrue(exporter.metrics.nanos(ExportStage.PARSE) > 0);
+        assertTrue(exporter.metrics.nanos(ExportStage.SERIALIZATION) > 0);
+
+        JsonObject json = new JsonParser().parse(new InputStreamReader(new FileInputStream(metricsFile))).getAsJsonObject();
+        assertEquals(8, json.get("redactions").getAsLong());
+        assertTrue(json.getAsJsonObject("stage_nanos").get("redaction").getAsLong() > 0);
+    }
+
+    /**
+     * Tests that a streaming export emits one stage event per stage for the times it recorded per message, and that
+     * the metrics of separate exports are published as separate MBeans.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testStreamingStageEventsAndMBeanPerExport() throws Exception {
+        File recordingFile = temporaryFolder.newFile("export.jfr");
+        ExportPlan plan = ExportPlan.compile("hide_word", "pie", "yes", "no");
+        ExportMetrics metrics;
+        try (Recording recording = new Recording()) {
+            recording.enable(ExportStageEvent.class);
+            recording.start();
+            metrics = plan.run(new FileInputStream(inputFilePath), new ByteArrayOutputStream());
+            recording.stop();
+            recording.dump(recordingFile.toPath());
+        }
+        Map<String, Long> items = new HashMap<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile.toPath())) {
+            if (event.getLong("exportId") == metrics.exportId()) {
+                items.put(event.getString("stage"), event.getLong("items"));
+            }
+        }
+        assertEquals(Long.valueOf(10), items.get("PARSE"));
+        assertEquals(Long.valueOf(9), items.get("REDACTION"));
+
+        ExportMetrics first = new ExportMetrics();
+        ExportMetrics second = new ExportMetrics();
+        first.publish();
+        second.publish();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(server.isRegistered(new ObjectName(ExportMetrics.OBJECT_NAME + ",id=" + first.exportId())));
+        assertTrue(server.isRegistered(new ObjectName(ExportMetrics.OBJECT_NAME + ",id=" + second.exportId())));
+    }
+
+    /**
+     * Tests that a partitioned export writes one file per user holding only that user's messages and report.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testPartitionByUser() throws Exception {
+        File directory = temporaryFolder.newFolder("partitions");
+        ConversationExporter exporter = new ConversationExporter();
+        String[] args = {"partition", "user", "yes", "no", "partition_dir=" + directory.getPath(), "max_open_files=2"};
+        exporter.exportConversation(inputFilePath, outputFilePath, args);
+
+        assertEquals(4, directory.list().length);
+        try {
+            new CommandLineArgumentParser().parseOptions(new String[]{"partition", "user", "no", "no", "dedup=yes"}, 4);
+            fail("A partitioned export does not drop duplicates.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("'dedup'"));
+        }
+        GsonBuilder builder = new GsonBuilder();
+        builder.registerTypeAdapter(Instant.class, new InstantDeserializer());
+        Conversation c = builder.create().fromJson(new InputStreamReader(new FileInputStream(new File(directory, "bob.json"))), Conversation.class);
+
+        assertEquals("My Conversation", c.conversation_name);
+        Message[] ms = new Message[c.messages.size()];
+        c.messages.toArray(ms);
+        assertEquals(4, ms.length);
+        assertEquals("Hello there!", ms[0].message);
+        assertEquals("it's *redacted*. Thanks, looking forward to the pie!", ms[3].message);
+        assertEquals("bob=4", c.user_activity_report.get(1));
+    }
+
+    /**
+     * Tests that partitions whose keys would give the same file name, once sanitized or ignoring case, are written
+     * to distinct files.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testPartitionFileNamesAreUnique() throws Exception {
+        File directory = temporaryFolder.newFolder("colliding");
+        PartitionedExport export = new PartitionedExport(directory.getPath(), PartitionedExport.PartitionBy.USER, "My Conversation", 2, 2, null);
+        String[] usernames = {"bob", "Bob", "bob!", "bob?", "bob_"};
+        for (String username : usernames) {
+            export.add(new Message(Instant.ofEpochSecond(1), username, "hi " + username));
+        }
+
+        List<Path> files = export.finish();
+
+        assertEquals(usernames.length, files.size());
+        Set<String> names = new HashSet<>();
+        for (Path file : files) {
+            assertTrue(names.add(file.getFileName().toString().toLowerCase(Locale.ROOT)));
+        }
+        assertTrue(names.contains("bob.json"));
+        assertTrue(names.contains("bob_.json"));
+        assertEquals(usernames.length, directory.list().length);
+    }
+
+    /**
+     * Tests that parallel redaction keeps the original order and leaves the original messages untouched.
+     */
+    @Test
+    public void testRedactInParallelPreservesOrder() {
+        ConversationExporter exporter = new ConversationExporter();
+        exporter.options.parallelism = 4;
+        exporter.options.redactionBatchSize = 3;
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            messages.add(new Message(Instant.ofEpochSecond(i), "bob", "pie number " + i));
+        }
+        Blacklist blacklist = new Blacklist(new String[]{"pie"});
+
+        List<Message> redacted = exporter.redactInParallel(messages, message -> blacklist.redact(message, exporter.metrics));
+
+        assertEquals(1000, redacted.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Instant.ofEpochSecond(i), redacted.get(i).unix_timestamp);
+            assertEquals("*redacted* number " + i, redacted.get(i).message);
+            assertEquals("pie number " + i, messages.get(i).message);
+        }
+        assertEquals(1000, exporter.metrics.redactions.get());
+    }
+
+    /**
+     * Tests that repeated bodies are redacted once per export and reused from the cache, while the redaction count
+     * is the same as without the cache and the least recently used bodies are evicted when the cache is full.
+     */
+    @Test
+    public void testRedactionCacheReusesRepeatedBodies() {
+        ConversationExporter exporter = new ConversationExporter();
+        exporter.options.parallelism = 4;
+        exporter.options.redactionBatchSize = 7;
+        exporter.options.redactionCacheSize = 256;
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            messages.add(new Message(Instant.ofEpochSecond(i), "bob", "pie and 4111111111111111, pie " + (i % 4)));
+        }
+        Blacklist blacklist = new Blacklist(new String[]{"pie"});
+
+        List<Message> redacted = exporter.redactInParallel(messages,
+                message -> exporter.redactCardAndPhoneNumbers(exporter.redactBlacklisted(blacklist, message)));
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("*redacted* and *redacted*, *redacted* " + (i % 4), redacted.get(i).message);
+        }
+        assertEquals(3000, exporter.metrics.redactions.get());
+        assertEquals(2000, exporter.metrics.redactionCacheHits.get() + exporter.metrics.redactionCacheMisses.get());
+        assertTrue(exporter.metrics.redactionCacheMisses.get() < 100);
+
+        RedactionCache cache = new RedactionCache(16);
+        ExportMetrics metrics = new ExportMetrics();
+        for (int i = 0; i < 100; i++) {
+            cache.redact("blacklist", "message " + i, metrics, blacklist::redact);
+        }
+        cache.redact("blacklist", "message 0", metrics, blacklist::redact);
+        assertEquals(0, metrics.redactionCacheHits.get());
+        assertEquals(101, metrics.redactionCacheMisses.get());
+
+        RedactionCache small = new RedactionCache(256, 16 * 40);
+        ExportMetrics bounded = new ExportMetrics();
+        String longText = "pie " + new String(new char[100]).replace('\0', 'x');
+        small.redact("blacklist", longText, bounded, blacklist::redact);
+        small.redact("blacklist", longText, bounded, blacklist::redact);
+        small.redact("blacklist", "pie", bounded, blacklist::redact);
+        small.redact("blacklist", "pie", bounded, blacklist::redact);
+        assertEquals(1, bounded.redactionCacheHits.get());
+        assertEquals(3, bounded.redactionCacheMisses.get());
+    }
+
+    /**
+     * Tests that running the streaming export as a back-pressured pipeline writes exactly what the sequential
+     * streaming export writes, and that a parse failure on the reader stage surfaces to the caller.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testPipelinedExportMatchesSequential() throws Exception {
+        File input = temporaryFolder.newFile("large.txt");
+        StringBuilder text = new StringBuilder("Large Conversation\n");
+        for (int i = 0; i < 5000; i++) {
+            text.append(1448470901 + i).append(i % 3 == 0 ? " bob " : " mike ").append("pie number 0780437").append(i % 10000).append('\n');
+        }
+        Files.write(input.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+
+        ConversationExporter exporter = new ConversationExporter();
+        StreamingExport export = new StreamingExport(exporter);
+        export.filter = m -> !m.message.endsWith("7");
+        export.hideCardAndPhoneNumbers = true;
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        try (MessageSource source = new ChatReader(input.getPath())) {
+            export.run(source, sequential);
+        }
+        ByteArrayOutputStream pipelined = new ByteArrayOutputStream();
+        try (MessageSource source = new ChatReader(input.getPath())) {
+            new PipelinedExport(export, 7, 2).run(source, pipelined);
+        }
+        assertEquals(sequential.toString("UTF-8"), pipelined.toString("UTF-8"));
+
+        Files.write(input.toPath(), "Broken\n1 bob fine\nnot a message\n".getBytes(StandardCharsets.UTF_8));
+        try (MessageSource source = new ChatReader(input.getPath())) {
+            new PipelinedExport(export, 1, 1).run(source, new ByteArrayOutputStream());
+            fail("The invalid line should have failed the export.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Line 3"));
+        }
+    }
+
+    /**
+     * Tests that a sampled export writes the requested number of kept messages in timestamp order, and that the same
+     * seed gives the same sample.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testSampledExport() throws Exception {
+        File input = temporaryFolder.newFile("sample.txt");
+        StringBuilder text = new StringBuilder("Sampled Conversation\n");
+        for (int i = 0; i < 1000; i++) {
+            text.append(1448470901 + i).append(i % 2 == 0 ? " bob " : " mike ").append("message ").append(i).append('\n');
+        }
+        Files.write(input.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+
+        String[] samples = new String[2];
+        for (int run = 0; run < samples.length; run++) {
+            ConversationExporter exporter = new ConversationExporter();
+            StreamingExport export = new StreamingExport(exporter);
+            export.filter = m -> m.username.equals("bob");
+            export.sample = new ReservoirSample(10, 42);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (MessageSource source = new ChatReader(input.getPath())) {
+                export.run(source, output);
+            }
+            samples[run] = output.toString("UTF-8");
+            assertEquals(10, exporter.metrics.messagesKept.get());
+            assertEquals(990, exporter.metrics.messagesDropped.get());
+        }
+        assertEquals(samples[0], samples[1]);
+
+        Gson g = new GsonBuilder().registerTypeAdapter(Instant.class, new InstantDeserializer()).create();
+        Conversation c = g.fromJson(samples[0], Conversation.class);
+        List<Message> ms = new ArrayList<>(c.messages);
+        assertEquals(10, ms.size());
+        for (int i = 0; i < ms.size(); i++) {
+            assertEquals("bob", ms.get(i).username);
+            if (i > 0) {
+                assertTrue(ms.get(i - 1).unix_timestamp.isBefore(ms.get(i).unix_timestamp));
+            }
+        }
+    }
+
+    /**
+     * Tests that a limited export stops reading once the page after the offset is full, and that the newest messages
+     * are found by reading the input from its end and written oldest first.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testLimitOffsetAndNewest() throws Exception {
+        File input = temporaryFolder.newFile("paged.txt");
+        StringBuilder text = new StringBuilder("Paged Conversation\n");
+        for (int i = 0; i < 1000; i++) {
+            text.append(1448470901 + i).append(i % 2 == 0 ? " bob " : " mike ").append("message ").append(i).append('\n');
+        }
+        Files.write(input.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        Gson g = new GsonBuilder().registerTypeAdapter(Instant.class, new InstantDeserializer()).create();
+
+        ConversationExporter exporter = new ConversationExporter();
+        exporter.options = new CommandLineArgumentParser().parseOptions(new String[]{"username", "bob", "no", "no", "offset=3", "limit=5"}, 4);
+        StreamingExport export = StreamingExport.fromOptions(exporter, false, false);
+        export.filter = m -> m.username.equals("bob");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (MessageSource source = new ChatReader(input.getPath())) {
+            export.run(source, output);
+        }
+        List<Message> page = new ArrayList<>(g.fromJson(output.toString("UTF-8"), Conversation.class).messages);
+        assertEquals(5, page.size());
+        for (int i = 0; i < page.size(); i++) {
+            assertEquals("message " + (2 * (i + 3)), page.get(i).message);
+        }
+        assertEquals(16, exporter.metrics.linesRead.get());
+        assertEquals(5, exporter.metrics.messagesKept.get());
+
+        exporter = new ConversationExporter();
+        exporter.options = new CommandLineArgumentParser().parseOptions(new String[]{"username", "mike", "no", "no", "newest=3", "offset=1"}, 4);
+        export = StreamingExport.fromOptions(exporter, false, false);
+        export.filter = m -> m.username.equals("mike");
+        output = new ByteArrayOutputStream();
+        try (MessageSource source = new ReverseChatReader(input.getPath())) {
+            assertEquals("Paged Conversation", source.conversationName());
+            export.run(source, output);
+        }
+        Conversation newest = g.fromJson(output.toString("UTF-8"), Conversation.class);
+        List<Message> ms = new ArrayList<>(newest.messages);
+        assertEquals(3, ms.size());
+        assertEquals("message 993", ms.get(0).message);
+        assertEquals("message 995", ms.get(1).message);
+        assertEquals("message 997", ms.get(2).message);
+        assertEquals(8, exporter.metrics.linesRead.get());
+
+        try {
+            new CommandLineArgumentParser().parseOptions(new String[]{"no_filter", "nil", "no", "no", "newest=3", "sort=user"}, 4);
+            fail("The newest messages cannot be found in a sorted export.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("'newest'"));
+        }
+        try {
+            new CommandLineArgumentParser().parseOptions(new String[]{"no_filter", "nil", "no", "no", "newest=3", "dedup=yes"}, 4);
+            fail("Duplicates cannot be dropped while reading backwards.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("'dedup'"));
+        }
+        try {
+            new CommandLineArgumentParser().parseOptions(new String[]{"partition", "day", "no", "no", "newest=3"}, 4);
+            fail("A partitioned export cannot read the input backwards.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("'newest'"));
+        }
+        assertEquals(0, new CommandLineArgumentParser().parseOptions(new String[]{"no_filter", "nil", "no", "no", "offset=0", "limit=5"}, 4).offset);
+    }
+
+    /**
+     * Tests that option values the export could not use are rejected while the options are parsed.
+     */
+    @Test
+    public void testInvalidCapacitiesAreRejected() {
+        try {
+            new CommandLineArgumentParser().parseOptions(new String[]{"no_filter", "nil", "yes", "no", "redaction_cache=8"}, 4);
+            fail("The redaction cache needs at least one entry per segment.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("'redaction_cache'"));
+        }
+        assertEquals(16, new CommandLineArgumentParser().parseOptions(new String[]{"no_filter", "nil", "yes", "no", "redaction_cache=16"}, 4).redactionCacheSize);
+        try {
+            new CommandLineArgumentParser().parseOptions(new String[]{"no_filter", "nil", "no", "yes", "pseudonym_capacity=1000"}, 4);
+            fail("The pseudonym store capacity must be a power of two.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("'pseudonym_capacity'"));
+        }
+        assertEquals(1024, new CommandLineArgumentParser().parseOptions(new String[]{"no_filter", "nil", "no", "yes", "pseudonym_capacity=1024"}, 4).pseudonymCapacity);
+    }
+
+    /**
+     * Tests that the compact schema references users by index and timestamps from the first message, and is smaller
+     * than the standard schema.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testCompactFormat() throws Exception {
+        File input = temporaryFolder.newFile("compact.txt");
+        Files.write(input.toPath(), "Compact Conversation\n100 bob hi\n105 mike hello\n110 bob bye\n".getBytes(StandardCharsets.UTF_8));
+
+        StreamingExport export = new StreamingExport(new ConversationExporter());
+        ByteArrayOutputStream standard = new ByteArrayOutputStream();
+        try (MessageSource source = new ChatReader(input.getPath())) {
+            export.run(source, standard);
+        }
+        export.format = OutputFormat.COMPACT;
+        ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        try (MessageSource source = new ChatReader(input.getPath())) {
+            export.run(source, compact);
+        }
+
+        assertEquals("{\"conversation_name\":\"Compact Conversation\",\"base_timestamp\":100,"
+                + "\"messages\":[[0,0,\"hi\"],[5,1,\"hello\"],[10,0,\"bye\"]],\"users\":[\"bob\",\"mike\"],"
+                + "\"user_activity_report\":[[0,2],[1,1]]}", compact.toString("UTF-8"));
+        assertTrue(compact.size() < standard.size());
+    }
+
+    /**
+     * Tests that the activity windows of the compact schema reference their top users by index too.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testCompactFormatActivityWindows() throws Exception {
+        File input = temporaryFolder.newFile("compact-windows.txt");
+        Files.write(input.toPath(), "Compact Conversation\n100 bob hi\n105 mike hello\n110 bob bye\n".getBytes(StandardCharsets.UTF_8));
+
+        StreamingExport export = new StreamingExport(new ConversationExporter());
+        export.format = OutputFormat.COMPACT;
+        export.windowedReport = new WindowedActivityReport(WindowedActivityReport.Window.HOUR, 2);
+        ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        try (MessageSource source = new ChatReader(input.getPath())) {
+            export.run(source, compact);
+        }
+
+        String window = "{\"window_start\":0,\"message_count\":3,\"top_users\":[[0,2],[1,1]]}";
+        assertTrue(compact.toString("UTF-8").endsWith("\"user_activity_report\":[[0,2],[1,1]],"
+                + "\"activity_windows\":{\"window\":\"hour\",\"recent_windows\":[" + window + "],"
+                + "\"peak_windows\":[" + window + "],\"late_messages\":0}}"));
+    }
+
+    /**
+     * Tests that serializing chunks of messages on several threads writes exactly what Gson writes on one.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testParallelSerializationMatchesGson() throws Exception {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            messages.add(new Message(Instant.ofEpochSecond(1448470901 + i), i % 3 == 0 ? "bob" : "mike", "it's message \"" + i + "\" \u00e9"));
+        }
+        List<String> report = new Report().makeReport(new Conversation("Big Conversation", messages));
+        Conversation conversation = new Conversation("Big Conversation", messages, report);
+
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        new ParallelJsonSerializer(4, 7).write(conversation, parallel);
+        Gson gson = new GsonBuilder().registerTypeAdapter(Instant.class, new InstantSerializer()).create();
+        assertEquals(gson.toJson(conversation), parallel.toString("UTF-8"));
+
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        Conversation noMessages = new Conversation("Empty", new ArrayList<>(), new ArrayList<>());
+        new ParallelJsonSerializer(2, 7).write(noMessages, empty);
+        assertEquals(gson.toJson(noMessages), empty.toString("UTF-8"));
+    }
+
+    /**
+     * Tests that one compiled plan run on many threads at once gives every run the same output and its own metrics.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testExportPlanRunsConcurrently() throws Exception {
+        StringBuilder text = new StringBuilder("Plan Conversation\n");
+        for (int i = 0; i < 500; i++) {
+            text.append(1448470901 + i).append(i % 2 == 0 ? " bob " : " mike ").append("pie and cake ").append(i).append('\n');
+        }
+        byte[] input = text.toString().getBytes(StandardCharsets.UTF_8);
+        ExportPlan plan = ExportPlan.compile("hide_word", "pie", "no", "yes", "format=compact");
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ExportMetrics expectedMetrics = plan.run(new ByteArrayInputStream(input), expected);
+        assertEquals(500, expectedMetrics.redactions.get());
+        assertTrue(expected.toString("UTF-8").contains("[0,0,\"*redacted* and cake 0\"]"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> runs = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                runs.add(executor.submit(() -> {
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    ExportMetrics metrics = plan.run(new ByteArrayInputStream(input), output);
+                    assertEquals(500, metrics.messagesKept.get());
+                    return output.toString("UTF-8");
+                }));
+            }
+            for (Future<String> run : runs) {
+                assertEquals(expected.toString("UTF-8"), run.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests that copied options keep their own stop words, which cannot be changed through the copy.
+     */
+    @Test
+    public void testExportOptionsCopyStopWords() {
+        ExportOptions options = new ExportOptions();
+        options.stopWords = new HashSet<>(Arrays.asList("pie", "cake"));
+
+        ExportOptions copy = options.copy();
+        options.stopWords.add("tart");
+
+        assertEquals(new HashSet<>(Arrays.asList("pie", "cake")), copy.stopWords);
+        try {
+            copy.stopWords.add("tart");
+            fail("The copied stop words can be changed.");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
 }
@@ -0,0 +1,90 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the {@link ConversationSnapshot}.
+ */
+public class ConversationSnapshotTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that a written snapshot loads back the same conversation, including the precomputed user activity.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        File input = folder.newFile("chat.txt");
+        Files.write(input.toPath(), "My Conversation\n1448470901 bob Hello there!\n".getBytes(StandardCharsets.UTF_8));
+        List<Message> messages = Arrays.asList(
+                new Message(Instant.ofEpochSecond(1448470901), "bob", "Hello there!"),
+                new Message(Instant.ofEpochSecond(1448470899), "mike", "Café ☕ first"),
+                new Message(Instant.ofEpochSecond(1448470950), "bob", ""));
+
+        ConversationSnapshot.write(input.getPath(), "My Conversation", messages);
+        ConversationSnapshot snapshot = ConversationSnapshot.load(input.getPath());
+
+        assertEquals("My Conversation", snapshot.conversationName);
+        assertEquals(3, snapshot.messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals(messages.get(i).unix_timestamp, snapshot.messages.get(i).unix_timestamp);
+            assertEquals(messages.get(i).username, snapshot.messages.get(i).username);
+            assertEquals(messages.get(i).message, snapshot.messages.get(i).message);
+        }
+        assertEquals(Integer.valueOf(2), snapshot.userActivity.get("bob"));
+        assertEquals(Integer.valueOf(1), snapshot.userActivity.get("mike"));
+    }
+
+    /**
+     * Tests that a snapshot is ignored once the input file it was made from changes.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testStaleSnapshotIsIgnored() throws Exception {
+        File input = folder.newFile("chat.txt");
+        Files.write(input.toPath(), "My Conversation\n1448470901 bob Hello there!\n".getBytes(StandardCharsets.UTF_8));
+        ConversationSnapshot.write(input.getPath(), "My Conversation",
+                Arrays.asList(new Message(Instant.ofEpochSecond(1448470901), "bob", "Hello there!")));
+
+        Files.write(input.toPath(), "My Conversation\n1448470901 bob Hello there?\n".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(ConversationSnapshot.load(input.getPath()));
+    }
+
+    /**
+     * Tests that a snapshot whose body is corrupt is ignored rather than failing the export.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testCorruptSnapshotIsIgnored() throws Exception {
+        File input = folder.newFile("chat.txt");
+        Files.write(input.toPath(), "My Conversation\n1448470901 bob Hello there!\n".getBytes(StandardCharsets.UTF_8));
+        ConversationSnapshot.write(input.getPath(), "My Conversation",
+                Arrays.asList(new Message(Instant.ofEpochSecond(1448470901), "bob", "Hello there!")));
+
+        Path snapshot = ConversationSnapshot.snapshotPath(input.getPath());
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 14] = 0x7F;
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertNull(ConversationSnapshot.load(input.getPath()));
+    }
+}
@@ -0,0 +1,235 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Allocation and throughput budgets for parsing, filtering and reporting, checked over a generated conversation.
+ * These tests only run in the {@code performance} profile: {@code mvn -P performance test}.
+ * <p>
+ * Allocation is measured with the allocated-bytes counter of the test thread, so every workload runs on that thread,
+ * and is budgeted per message. Throughput is not compared with fixed numbers, which would depend on the machine, but
+ * with a baseline calibrated on the same machine and input: reading the file with a {@link BufferedReader} and
+ * matching every line with a regex, as the exporter originally did. Each workload is warmed up, then the best of
+ * several runs is taken. The {@value #SLACK_PROPERTY} system property loosens every budget by the given factor on
+ * noisy machines.
+ */
+public class ExportPerformanceTests {
+    private static final String SLACK_PROPERTY = "performance.slack";
+    private static final int MESSAGES = 200_000;
+    private static final int USERS = 500;
+    private static final int WARM_UP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+    private static final double SLACK = Double.parseDouble(System.getProperty(SLACK_PROPERTY, "1"));
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static File input;
+    private static Measurement baseline;
+
+    /**
+     * Generates the conversation and measures the baseline throughput.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @BeforeClass
+    public static void calibrate() throws Exception {
+        Assume.assumeTrue("The JVM cannot count the bytes allocated by a thread.", threadMXBean().isThreadAllocatedMemorySupported());
+        threadMXBean().setThreadAllocatedMemoryEnabled(true);
+
+        input = folder.newFile("chat.txt");
+        String[] texts = {
+                "Hello there!", "how are you?", "I'm good thanks, do you like pie?", "no, let me ask Angus...",
+                "Hell yes! Are we buying some pie?", "the build is green again", "ok", "see you at the standup",
+                "my number is 07804377261", "card 4321567890121234 expires soon"};
+        Random random = new Random(7);
+        try (Writer writer = Files.newBufferedWriter(input.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("Generated Conversation\n");
+            for (int i = 0; i < MESSAGES; i++) {
+                String text = random.nextInt(4) == 0 ? "message number " + i + " about pie" : texts[random.nextInt(texts.length)];
+                writer.write((1448470901L + i) + " " + username(random.nextInt(USERS)) + " " + text + "\n");
+            }
+        }
+
+        Pattern linePattern = Pattern.compile("^(\\d+) ([A-Za-z]+) (.+)$");
+        baseline = measure(() -> {
+            List<Message> messages = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new FileReader(input))) {
+                reader.readLine();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Matcher matcher = linePattern.matcher(line);
+                    if (matcher.find()) {
+                        messages.add(new Message(Instant.ofEpochSecond(Long.parseUnsignedLong(matcher.group(1))), matcher.group(2), matcher.group(3)));
+                    }
+                }
+            }
+            assertEquals(MESSAGES, messages.size());
+        });
+        System.out.println("baseline: " + baseline);
+    }
+
+    /**
+     * Tests that parsing the conversation allocates little more than the messages themselves and is faster than
+     * the baseline.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testParse() throws Exception {
+        Measurement parse = measure(() -> {
+            long messages = 0;
+            try (ChatReader reader = new ChatReader(input.getPath())) {
+                while (reader.next() != null) {
+                    messages++;
+                }
+            }
+            assertEquals(MESSAGES, messages);
+        });
+        assertWithinBudget("parse", parse, 250, 1.5);
+    }
+
+    /**
+     * Tests the allocation and throughput of an export filtered by username, hiding card and phone numbers.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testUsernameExport() throws Exception {
+        ExportPlan plan = ExportPlan.compile("username", username(3), "yes", "no");
+        Measurement export = measure(() -> plan.run(new FileInputStream(input), OutputStream.nullOutputStream()));
+        assertWithinBudget("username export", export, 300, 0.5);
+    }
+
+    /**
+     * Tests the allocation and throughput of an export hiding words, card and phone numbers and obfuscating user ids
+     * in every message.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testHideWordExport() throws Exception {
+        ExportPlan plan = ExportPlan.compile("hide_word", "pie,standup", "yes", "yes");
+        Measurement export = measure(() -> plan.run(new FileInputStream(input), OutputStream.nullOutputStream()));
+        assertWithinBudget("hide_word export", export, 6000, 0.04);
+    }
+
+    /**
+     * Tests that the user activity report over every message allocates almost nothing per message.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testReport() throws Exception {
+        List<Message> messages = new ArrayList<>();
+        try (ChatReader reader = new ChatReader(input.getPath())) {
+            Message message;
+            while ((message = reader.next()) != null) {
+                messages.add(message);
+            }
+        }
+        Conversation conversation = new Conversation("Generated Conversation", messages);
+        Measurement report = measure(() -> assertEquals(USERS + 1, new Report().makeReport(conversation).size()));
+        assertWithinBudget("report", report, 32, 1.5);
+    }
+
+    /**
+     * Fails when the workload allocated more than {@code bytesPerMessage} per message, or processed messages slower
+     * than {@code minimumRatio} times the baseline, each loosened by the slack.
+     */
+    private static void assertWithinBudget(String workload, Measurement measurement, long bytesPerMessage, double minimumRatio) {
+        double ratio = measurement.messagesPerSecond() / baseline.messagesPerSecond();
+        System.out.println(workload + ": " + measurement + String.format(", %.2fx baseline", ratio));
+        assertTrue(workload + " allocated " + measurement.bytesPerMessage() + " bytes per message, over its budget of "
+                + bytesPerMessage + ".", measurement.bytesPerMessage() <= bytesPerMessage * SLACK);
+        assertTrue(workload + String.format(" ran at %.2fx the baseline throughput, under its minimum of %.2fx.", ratio, minimumRatio),
+                ratio >= minimumRatio / SLACK);
+    }
+
+    /**
+     * Runs the workload a few times to warm it up, then measures several runs and keeps the fastest time and the
+     * fewest bytes allocated.
+     */
+    private static Measurement measure(Workload workload) throws Exception {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            workload.run();
+        }
+        long bestNanos = Long.MAX_VALUE;
+        long leastBytes = Long.MAX_VALUE;
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long bytesBefore = threadMXBean().getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            workload.run();
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            leastBytes = Math.min(leastBytes, threadMXBean().getThreadAllocatedBytes(threadId) - bytesBefore);
+        }
+        return new Measurement(bestNanos, leastBytes);
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        return (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    /**
+     * Spells the given user number in letters, as usernames may only have letters.
+     */
+    private static String username(int user) {
+        StringBuilder username = new StringBuilder("user");
+        do {
+            username.append((char) ('a' + user % 26));
+            user /= 26;
+        } while (user > 0);
+        return username.toString();
+    }
+
+    private interface Workload {
+        void run() throws Exception;
+    }
+
+    private static final class Measurement {
+        final long nanos;
+        final long bytes;
+
+        Measurement(long nanos, long bytes) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        double messagesPerSecond() {
+            return MESSAGES * 1e9 / nanos;
+        }
+
+        long bytesPerMessage() {
+            return bytes / MESSAGES;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f messages/s, %d bytes/message", messagesPerSecond(), bytesPerMessage());
+        }
+    }
+}
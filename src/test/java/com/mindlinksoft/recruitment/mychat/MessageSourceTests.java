@@ -0,0 +1,291 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the {@link MessageSource} implementations.
+ */
+public class MessageSourceTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that rotated files are merged into one stream ordered by timestamp, with ties kept in file order.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testMergeOrdersByTimestamp() throws Exception {
+        File first = write("chat.txt", "My Conversation\n100 bob one\n300 bob three\n500 bob five\n");
+        File second = write("chat.txt.1", "Older Name\n200 mike two\n300 mike three\n");
+        File third = write("chat.txt.2", "Empty\n");
+
+        try (MessageSource source = MergingMessageSource.open(Arrays.asList(first.getPath(), second.getPath(), third.getPath()))) {
+            assertEquals("My Conversation", source.conversationName());
+            assertMessage(source.next(), 100, "bob", "one");
+            assertMessage(source.next(), 200, "mike", "two");
+            assertMessage(source.next(), 300, "bob", "three");
+            assertMessage(source.next(), 300, "mike", "three");
+            assertMessage(source.next(), 500, "bob", "five");
+            assertNull(source.next());
+            assertEquals(8, source.linesRead());
+        }
+    }
+
+    /**
+     * Tests that messages repeated across overlapping rotated files are dropped, while messages that only share
+     * some of their timestamp, sender and text are kept.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testDuplicateFilterDropsRepeatsWithinWindow() throws Exception {
+        File first = write("chat.txt", "My Conversation\n100 bob one\n200 mike two\n200 mike two!\n");
+        File second = write("chat.txt.1", "My Conversation\n100 bob one\n200 bob two\n200 mike two\n");
+
+        DuplicateFilter duplicates = new DuplicateFilter(60, 16);
+        int kept = 0;
+        try (MessageSource source = MergingMessageSource.open(Arrays.asList(first.getPath(), second.getPath()))) {
+            Message message;
+            while ((message = source.next()) != null) {
+                if (!duplicates.isDuplicate(message)) {
+                    kept++;
+                }
+            }
+        }
+        assertEquals(4, kept);
+
+        assertFalse(duplicates.isDuplicate(new Message(Instant.ofEpochSecond(1000), "bob", "later")));
+        assertFalse("Messages older than the window are forgotten",
+                duplicates.isDuplicate(new Message(Instant.ofEpochSecond(100), "bob", "one")));
+        assertTrue(duplicates.isDuplicate(new Message(Instant.ofEpochSecond(1000), "bob", "later")));
+    }
+
+    /**
+     * Tests that the duplicate filter grows past its initial size without forgetting messages in the window, and
+     * still forgets the oldest ones once its capacity is reached.
+     */
+    @Test
+    public void testDuplicateFilterGrowsUpToCapacity() {
+        DuplicateFilter growing = new DuplicateFilter(60, 5000);
+        DuplicateFilter bounded = new DuplicateFilter(60, 3000);
+        for (int i = 0; i < 5000; i++) {
+            Message message = new Message(Instant.ofEpochSecond(100), "bob", "message " + i);
+            assertFalse(growing.isDuplicate(message));
+            assertFalse(bounded.isDuplicate(message));
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(growing.isDuplicate(new Message(Instant.ofEpochSecond(100), "bob", "message " + i)));
+        }
+        assertFalse(bounded.isDuplicate(new Message(Instant.ofEpochSecond(100), "bob", "message 0")));
+        assertTrue(bounded.isDuplicate(new Message(Instant.ofEpochSecond(100), "bob", "message 4999")));
+    }
+
+    /**
+     * Tests that out-of-order input is sorted by user and then time across several spilled runs, keeping the input
+     * order of messages that compare equal.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testExternalSortByUser() throws Exception {
+        File input = write("chat.txt", "My Conversation\n300 mike c\n100 bob a\n200 mike b\n100 bob tie\n"
+                + "500 angus e\n50 mike z\n400 bob d\n");
+
+        try (SortingMessageSource source = new SortingMessageSource(new ChatReader(input.getPath()), SortOrder.USER, 2)) {
+            assertEquals("My Conversation", source.conversationName());
+            assertMessage(source.next(), 500, "angus", "e");
+            assertMessage(source.next(), 100, "bob", "a");
+            assertMessage(source.next(), 100, "bob", "tie");
+            assertMessage(source.next(), 400, "bob", "d");
+            assertMessage(source.next(), 50, "mike", "z");
+            assertMessage(source.next(), 200, "mike", "b");
+            assertMessage(source.next(), 300, "mike", "c");
+            assertNull(source.next());
+            assertEquals(3, source.spilledRuns());
+            assertEquals(8, source.linesRead());
+        }
+    }
+
+    /**
+     * Tests that runs beyond the merge fan-in are merged in several passes, still sorted and stable.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testExternalSortWithBoundedFanIn() throws Exception {
+        File input = write("chat.txt", "My Conversation\n300 mike c\n100 bob a\n200 mike b\n100 bob tie\n"
+                + "500 angus e\n50 mike z\n400 bob d\n");
+
+        try (SortingMessageSource source = new SortingMessageSource(new ChatReader(input.getPath()), SortOrder.USER, 1, 2)) {
+            assertMessage(source.next(), 500, "angus", "e");
+            assertMessage(source.next(), 100, "bob", "a");
+            assertMessage(source.next(), 100, "bob", "tie");
+            assertMessage(source.next(), 400, "bob", "d");
+            assertMessage(source.next(), 50, "mike", "z");
+            assertMessage(source.next(), 200, "mike", "b");
+            assertMessage(source.next(), 300, "mike", "c");
+            assertNull(source.next());
+            assertEquals(7, source.spilledRuns());
+        }
+    }
+
+    /**
+     * Tests that an export read back as JSON gives the same messages as the text it was made from, so exporting it
+     * again gives the same document.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testJsonImportRoundTrip() throws Exception {
+        File input = write("chat.txt", "My Conversation\n100 bob it's \"quoted\"\n200 mike cafe \\ bar\n");
+        File exported = folder.newFile("chat.json");
+        StreamingExport export = new StreamingExport(new ConversationExporter());
+        export.windowedReport = new WindowedActivityReport(WindowedActivityReport.Window.HOUR, 2);
+        try (MessageSource source = new ChatReader(input.getPath())) {
+            export.run(source, new FileOutputStream(exported));
+        }
+
+        try (MessageSource source = new JsonMessageSource(exported.getPath())) {
+            assertEquals("My Conversation", source.conversationName());
+            assertMessage(source.next(), 100, "bob", "it's \"quoted\"");
+            assertMessage(source.next(), 200, "mike", "cafe \\ bar");
+            assertNull(source.next());
+            assertNull(source.next());
+            assertEquals(3, source.linesRead());
+        }
+
+        export.windowedReport = null;
+        ByteArrayOutputStream fromText = new ByteArrayOutputStream();
+        try (MessageSource source = new ChatReader(input.getPath())) {
+            export.run(source, fromText);
+        }
+        ByteArrayOutputStream fromJson = new ByteArrayOutputStream();
+        try (MessageSource source = new JsonMessageSource(exported.getPath())) {
+            export.run(source, fromJson);
+        }
+        assertEquals(fromText.toString("UTF-8"), fromJson.toString("UTF-8"));
+    }
+
+    /**
+     * Tests that the eight-bytes-at-a-time scanner finds the same bytes as a byte-at-a-time scan, and that the
+     * reader splits lines as {@link java.io.BufferedReader} does, including lines longer than its buffer.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testByteScannerAndLineSplitting() throws Exception {
+        Random random = new Random(42);
+        byte[] bytes = new byte[4096];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (random.nextInt(8) == 0 ? "\n\r \u00e9".charAt(random.nextInt(4)) : random.nextInt(256));
+        }
+        for (int from = 0; from < 64; from++) {
+            for (int to = from; to < bytes.length; to += 1 + random.nextInt(97)) {
+                assertEquals(ByteScanner.scalarIndexOfEither(bytes, from, to, (byte) '\n', (byte) '\r'),
+                        ByteScanner.indexOfLineEnd(bytes, from, to));
+                assertEquals(ByteScanner.scalarIndexOfEither(bytes, from, to, (byte) ' ', (byte) ' '),
+                        ByteScanner.indexOf(bytes, from, to, (byte) ' '));
+            }
+        }
+
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            longText.append((char) ('a' + i % 26));
+        }
+        String text = "Name\r\n100 bob one\r200 mike 4111 two  \n300 bob " + longText + "\r\n18446744073709551615 dave last";
+        try (ChatReader reader = new ChatReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)))) {
+            assertEquals("Name", reader.conversationName());
+            assertMessage(reader.next(), 100, "bob", "one");
+            assertMessage(reader.next(), 200, "mike", "4111 two  ");
+            assertMessage(reader.next(), 300, "bob", longText.toString());
+            assertEquals(-1, reader.next().unix_timestamp.getEpochSecond());
+            assertNull(reader.next());
+            assertEquals(5, reader.linesRead());
+        }
+        try (ChatReader reader = new ChatReader(new ByteArrayInputStream("Name\n100 bob\n".getBytes(StandardCharsets.US_ASCII)))) {
+            reader.next();
+            fail("A line without a message should not be read.");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Line 2 is not a '<unix_timestamp> <username> <message>' line.", e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that reading a file from its end gives the messages of reading it from its start in reverse, across
+     * blocks, mixed line ends and a line longer than the read buffer.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testReverseChatReaderMatchesForwardReading() throws Exception {
+        StringBuilder text = new StringBuilder("My Conversation\r\n");
+        String[] lineEnds = {"\n", "\r\n", "\r"};
+        for (int i = 0; i < 20000; i++) {
+            text.append(i).append(" bob message ").append(i);
+            if (i == 12345) {
+                for (int j = 0; j < 100000; j++) {
+                    text.append((char) ('a' + j % 26));
+                }
+            }
+            text.append(i == 19999 ? "" : lineEnds[i % 3]);
+        }
+        File input = write("chat.txt", text.toString());
+
+        List<Message> forward = new ArrayList<>();
+        try (ChatReader reader = new ChatReader(input.getPath())) {
+            Message m;
+            while ((m = reader.next()) != null) {
+                forward.add(m);
+            }
+        }
+        try (ReverseChatReader reader = new ReverseChatReader(input.getPath())) {
+            assertEquals("My Conversation", reader.conversationName());
+            for (int i = forward.size() - 1; i >= 0; i--) {
+                assertMessage(reader.next(), forward.get(i).unix_timestamp.getEpochSecond(), forward.get(i).username, forward.get(i).message);
+            }
+            assertNull(reader.next());
+            assertEquals(20001, reader.linesRead());
+        }
+
+        File empty = write("empty.txt", "Name\n");
+        try (ReverseChatReader reader = new ReverseChatReader(empty.getPath())) {
+            assertEquals("Name", reader.conversationName());
+            assertNull(reader.next());
+        }
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void assertMessage(Message message, long timestamp, String username, String body) {
+        assertEquals(Instant.ofEpochSecond(timestamp), message.unix_timestamp);
+        assertEquals(username, message.username);
+        assertEquals(body, message.message);
+    }
+}
@@ -0,0 +1,82 @@
+package com.mindlinksoft.recruitment.mychat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests for the {@link PseudonymStore}.
+ */
+public class PseudonymStoreTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that pseudonyms are random rather than derived from the username, and survive reopening the store.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testPseudonymsPersistAcrossExports() throws Exception {
+        String path = folder.getRoot().getPath() + "/pseudonyms";
+        String bob;
+        String mike;
+        try (PseudonymStore store = PseudonymStore.open(path, 16)) {
+            bob = store.pseudonym("bob");
+            mike = store.pseudonym("mike");
+            assertEquals(bob, store.pseudonym("bob"));
+            assertNotEquals(bob, mike);
+            assertNotEquals(new ConversationExporter().obfuscateUserIds("bob"), bob);
+            assertEquals(2, store.size());
+        }
+        try (PseudonymStore store = PseudonymStore.open(path, 16)) {
+            assertEquals(mike, store.pseudonym("mike"));
+            assertEquals(bob, store.pseudonym("bob"));
+            assertEquals(2, store.size());
+        }
+    }
+
+    /**
+     * Tests that concurrent exports assigning and looking up the same users all agree on one pseudonym per user.
+     *
+     * @throws Exception When something bad happens.
+     */
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        String path = folder.getRoot().getPath() + "/pseudonyms";
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (PseudonymStore store = PseudonymStore.open(path, 1024)) {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    List<String> pseudonyms = new ArrayList<>();
+                    for (int i = 0; i < 500; i++) {
+                        pseudonyms.add(store.pseudonym("user" + i));
+                    }
+                    return pseudonyms;
+                }));
+            }
+            List<String> first = results.get(0).get();
+            for (Future<List<String>> result : results) {
+                assertEquals(first, result.get());
+            }
+            Set<String> distinct = new HashSet<>(first);
+            assertEquals(500, distinct.size());
+            assertEquals(500, store.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
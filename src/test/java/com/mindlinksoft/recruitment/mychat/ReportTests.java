@@ -9,9 +9,16 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ReportTests {
 
@@ -124,4 +131,146 @@ public class ReportTests {
                     "to the output file.");
         }
     }
+
+    /**
+     * Test for the windowed activity report: windows are counted per hour, only the most recent windows are kept,
+     * messages too old for the ring are counted as late and the busiest windows are reported as peaks.
+     */
+    @Test
+    public void testWindowedActivityReport() {
+        WindowedActivityReport report = new WindowedActivityReport(WindowedActivityReport.Window.HOUR, 2);
+        long hour = 3600;
+        report.add(new Message(Instant.ofEpochSecond(0), "bob", "a"));
+        report.add(new Message(Instant.ofEpochSecond(10), "bob", "b"));
+        report.add(new Message(Instant.ofEpochSecond(20), "mike", "c"));
+        report.add(new Message(Instant.ofEpochSecond(hour), "mike", "d"));
+        report.add(new Message(Instant.ofEpochSecond(3 * hour + 5), "angus", "e"));
+        report.add(new Message(Instant.ofEpochSecond(hour + 30), "bob", "late but still in the ring"));
+        report.add(new Message(Instant.ofEpochSecond(30), "dave", "too late"));
+
+        WindowedActivityReport.Summary summary = report.finish();
+
+        assertEquals("hour", summary.window);
+        assertEquals(1, summary.late_messages);
+        assertEquals(2, summary.recent_windows.size());
+        assertEquals(hour, summary.recent_windows.get(0).window_start);
+        assertEquals(2, summary.recent_windows.get(0).message_count);
+        assertEquals(3 * hour, summary.recent_windows.get(1).window_start);
+        assertEquals(1, summary.recent_windows.get(1).message_count);
+
+        assertEquals(3, summary.peak_windows.size());
+        assertEquals(0, summary.peak_windows.get(0).window_start);
+        assertEquals(3, summary.peak_windows.get(0).message_count);
+        assertEquals("bob=2", summary.peak_windows.get(0).top_users.get(0));
+        assertEquals(hour, summary.peak_windows.get(1).window_start);
+    }
+
+    /**
+     * Tests the conversation statistics, with the distinct senders of a large channel estimated within 2%.
+     */
+    @Test
+    public void testConversationStatistics() {
+        ConversationStatistics statistics = new ConversationStatistics(16);
+        statistics.add(new Message(Instant.ofEpochSecond(100), "bob", "caf\u00e9"));
+        for (int i = 0; i < 50000; i++) {
+            statistics.add(new Message(Instant.ofEpochSecond(200 + i), "user" + i, "a"));
+            if (i % 10 == 0) {
+                statistics.add(new Message(Instant.ofEpochSecond(200 + i), "bob", "b"));
+            }
+        }
+
+        ConversationStatistics.Summary summary = statistics.finish("Big Channel");
+
+        assertEquals("Big Channel", summary.conversation_name);
+        assertEquals(55001, summary.message_count);
+        assertEquals(Long.valueOf(100), summary.first_timestamp);
+        assertEquals(Long.valueOf(50199), summary.last_timestamp);
+        assertEquals(50099, summary.time_span_seconds);
+        assertEquals(5 + 55000, summary.text_bytes);
+        assertEquals(50001, summary.distinct_users, 1000);
+        assertEquals("bob", summary.user_activity_report.get(1).split("=")[0]);
+    }
+
+    /**
+     * Tests that users with the same count are ranked by username whatever the order of the map they come from.
+     */
+    @Test
+    public void testReportTieBreak() {
+        Map<String, Integer> inserted = new LinkedHashMap<>();
+        inserted.put("angus", 2);
+        inserted.put("dave", 1);
+        inserted.put("mike", 2);
+        inserted.put("bob", 4);
+        Map<String, Integer> hashed = new HashMap<>(inserted);
+
+        List<String> expected = Arrays.asList("bob=4", "mike=2", "angus=2", "dave=1");
+        assertEquals(expected, new Report().makeReport(inserted).subList(1, 5));
+        assertEquals(expected, new Report().makeReport(hashed).subList(1, 5));
+    }
+
+    /**
+     * Tests the error guarantee of the tracked users when there are far more users than counters: every user with
+     * more than {@code messages / trackedUsers} messages is reported, with a count never below the true count and at
+     * most {@code messages / trackedUsers} above it.
+     */
+    @Test
+    public void testConversationStatisticsErrorBound() {
+        int trackedUsers = 16;
+        String[] heavyUsers = {"alice", "bob", "carol"};
+        int[] heavyCounts = {4000, 3000, 2000};
+        List<String> usernames = new ArrayList<>();
+        for (int i = 0; i < heavyUsers.length; i++) {
+            for (int j = 0; j < heavyCounts[i]; j++) {
+                usernames.add(heavyUsers[i]);
+            }
+        }
+        for (int i = 0; i < 20000; i++) {
+            usernames.add("user" + (i % 7000));
+        }
+        Collections.shuffle(usernames, new Random(3));
+
+        ConversationStatistics statistics = new ConversationStatistics(trackedUsers);
+        for (int i = 0; i < usernames.size(); i++) {
+            statistics.add(new Message(Instant.ofEpochSecond(i), usernames.get(i), "hi"));
+        }
+        ConversationStatistics.Summary summary = statistics.finish("Busy Channel");
+
+        long maximumError = summary.message_count / trackedUsers;
+        Map<String, Integer> reported = new HashMap<>();
+        summary.user_activity_report.stream().skip(1).forEach(line ->
+                reported.put(line.split("=")[0], Integer.parseInt(line.split("=")[1])));
+        for (int i = 0; i < heavyUsers.length; i++) {
+            assertTrue(heavyUsers[i] + " sent more than 1/" + trackedUsers + " of the messages", heavyCounts[i] > maximumError);
+            Integer count = reported.get(heavyUsers[i]);
+            assertTrue(heavyUsers[i] + " is reported", count != null);
+            assertTrue(count >= heavyCounts[i]);
+            assertTrue(count <= heavyCounts[i] + maximumError);
+        }
+        assertEquals("alice", summary.user_activity_report.get(1).split("=")[0]);
+    }
+
+    /**
+     * Tests that the trending terms report lists the most frequent words, skipping stop words, while thousands of
+     * distinct words pass through the sketch.
+     */
+    @Test
+    public void testTrendingTermsReport() {
+        TrendingTermsReport report = new TrendingTermsReport(3, TrendingTermsReport.DEFAULT_STOP_WORDS);
+        for (int i = 0; i < 5000; i++) {
+            report.add(new Message(Instant.ofEpochSecond(i), "bob", "The pie, the PIE and word" + i));
+            if (i % 2 == 0) {
+                report.add(new Message(Instant.ofEpochSecond(i), "mike", "Shop for pie at the shop?"));
+            }
+            if (i % 5 == 0) {
+                report.add(new Message(Instant.ofEpochSecond(i), "angus", "cake"));
+            }
+        }
+
+        List<String> terms = report.finish();
+
+        assertEquals(3, terms.size());
+        assertEquals("pie=12500", terms.get(0));
+        assertEquals("shop=5000", terms.get(1));
+        assertEquals("cake=1000", terms.get(2));
+    }
 }